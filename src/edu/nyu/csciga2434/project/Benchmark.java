@@ -0,0 +1,263 @@
+package edu.nyu.csciga2434.project;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Micro benchmarks of the hot paths, run by hand like Test.
+ * Every case builds fresh state, which is not timed, then runs its workload a few times to warm up
+ * and a few more times to measure, reporting the best and the mean operations per second
+ * and the bytes allocated per operation by the running thread.
+ * Everything runs on the calling thread, the transaction manager with no site worker threads and no output,
+ * so the numbers are those of the engine alone.
+ *
+ * The cases are
+ * transactions: begin, reads, writes and end through the client API, one operation of every active transaction per tick,
+ *      for several numbers of transactions active at once and several skews of the variables they use,
+ * locks: acquire, check, upgrade, list and release in a lock table already holding more and more locks,
+ * versions: snapshot lookups in longer and longer version chains,
+ * deadlock: deadlock detection on larger and larger wait-for graphs.
+ */
+public class Benchmark {
+
+    private static final int WARMUP_ITERATIONS = 2;
+    private static final long SEED = 42;
+
+    /**
+     *  A prepared workload, run returns the number of operations it did
+     */
+    private interface Workload {
+        long run();
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean;
+
+    /**
+     *  args[0] is which cases to run(transactions, locks, versions, deadlock or all)
+     *  optionally followed by the number of measured iterations of every case,
+     *  e.g. Benchmark all 5
+     */
+    public static void main(String[] args) {
+        String which = args.length > 0 ? args[0] : "all";
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        if (iterations < 1) {
+            throw new IllegalArgumentException("There should be at least one iteration.");
+        }
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            allocationBean = (com.sun.management.ThreadMXBean) bean;
+            allocationBean.setThreadAllocatedMemoryEnabled(true);
+        }
+        System.out.println(String.format("%-14s %-34s %14s %14s %12s", "[Benchmark]", "parameters", "best ops/s", "mean ops/s", "bytes/op"));
+
+        boolean all = which.equals("all");
+        boolean ran = false;
+        if (all || which.equals("transactions")) {
+            for (int active : new int[]{1, 8, 64}) {
+                for (double theta : new double[]{0, 0.99}) {
+                    measure("transactions", "active=" + active + " theta=" + theta, iterations,
+                            () -> transactions(active, theta, 1000, 2000));
+                }
+            }
+            ran = true;
+        }
+        if (all || which.equals("locks")) {
+            for (int lockCount : new int[]{1000, 10000, 100000}) {
+                measure("locks", "held=" + lockCount, iterations, () -> locks(lockCount, 100000));
+            }
+            ran = true;
+        }
+        if (all || which.equals("versions")) {
+            for (int chainLength : new int[]{16, 1024, 65536}) {
+                measure("versions", "versions=" + chainLength, iterations, () -> versions(chainLength, 1000000));
+            }
+            ran = true;
+        }
+        if (all || which.equals("deadlock")) {
+            for (int transactionCount : new int[]{100, 1000, 10000}) {
+                measure("deadlock", "transactions=" + transactionCount, iterations,
+                        () -> deadlock(transactionCount, Math.max(1, 100000 / transactionCount)));
+            }
+            ran = true;
+        }
+        if (!ran) {
+            throw new IllegalArgumentException("Unknown benchmark " + which + ".");
+        }
+    }
+
+    private static void measure(String name, String parameters, int iterations, Supplier<Workload> setup) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            setup.get().run();
+        }
+        double best = 0;
+        double totalRate = 0;
+        long totalOperations = 0;
+        long totalBytes = 0;
+        for (int i = 0; i < iterations; i++) {
+            Workload workload = setup.get();
+            long bytesBefore = allocatedBytes();
+            long start = System.nanoTime();
+            long operations = workload.run();
+            long elapsed = Math.max(1, System.nanoTime() - start);
+            long bytes = allocatedBytes() - bytesBefore;
+            double rate = operations * 1e9 / elapsed;
+            best = Math.max(best, rate);
+            totalRate += rate;
+            totalOperations += operations;
+            totalBytes += bytes;
+        }
+        String bytesPerOperation = allocationBean == null ? "n/a" : String.format("%.1f", (double) totalBytes / Math.max(1, totalOperations));
+        System.out.println(String.format("%-14s %-34s %14.0f %14.0f %12s", name, parameters, best, totalRate / iterations, bytesPerOperation));
+    }
+
+    private static long allocatedBytes() {
+        return allocationBean == null ? 0 : allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+
+    /**
+     *  This many read-write transactions are active at once, each one reads or writes four variables and then ends,
+     *  a new one begins in the tick after the end of the one before has committed or aborted,
+     *  an end which has to wait keeps its slot until then.
+     *  Every API call is counted as one operation, whether it runs at once or has to wait.
+     */
+    private static Workload transactions(int active, double theta, int variableCount, int tickCount) {
+        TransactionManager manager = new TransactionManager(
+                new ClusterConfiguration(10, variableCount, 3, new ModuloPlacementPolicy()), new NoOpEventListener());
+        ZipfianGenerator keys = new ZipfianGenerator(variableCount, theta, SEED);
+        Random random = new Random(SEED);
+        int operationsPerTransaction = 4;
+        return () -> {
+            int[] transactionOfSlot = new int[active];
+            int[] operationsDone = new int[active];
+            List<CompletableFuture<OperationResult>> endOfSlot = new ArrayList<>(Collections.nCopies(active, null));
+            int nextTransactionID = 1;
+            long operations = 0;
+            for (int tick = 0; tick < tickCount; tick++) {
+                manager.openTick();
+                for (int slot = 0; slot < active; slot++) {
+                    if (endOfSlot.get(slot) != null) {
+                        if (!endOfSlot.get(slot).isDone()) {
+                            continue;
+                        }
+                        endOfSlot.set(slot, null);
+                        transactionOfSlot[slot] = 0;
+                    }
+                    if (transactionOfSlot[slot] == 0) {
+                        transactionOfSlot[slot] = nextTransactionID++;
+                        operationsDone[slot] = 0;
+                        manager.beginReadWrite(transactionOfSlot[slot]);
+                    } else if (operationsDone[slot] == operationsPerTransaction) {
+                        endOfSlot.set(slot, manager.end(transactionOfSlot[slot]));
+                    } else if (random.nextBoolean()) {
+                        manager.readValue(transactionOfSlot[slot], keys.next());
+                        operationsDone[slot]++;
+                    } else {
+                        manager.writeValue(transactionOfSlot[slot], keys.next(), tick);
+                        operationsDone[slot]++;
+                    }
+                    operations++;
+                }
+                manager.closeTick();
+            }
+            manager.shutdown();
+            return operations;
+        };
+    }
+
+
+    /**
+     *  The table already holds a read lock on each of this many variables,
+     *  then another transaction repeatedly takes a read lock on one of them, checks it, upgrades it, lists the locks
+     *  on the variable and releases it again, which counts as five operations
+     */
+    private static Workload locks(int lockCount, int roundCount) {
+        LockTable table = new LockTable();
+        for (int variableID = 1; variableID <= lockCount; variableID++) {
+            table.addLock(variableID, 1 + variableID % 100, TypeOfLock.Read);
+        }
+        int[] variables = randomInts(roundCount, lockCount);
+        int transactionID = 1000;
+        return () -> {
+            for (int variableID : variables) {
+                table.addLock(variableID, transactionID, TypeOfLock.Read);
+                table.ifTransactionHasLockOnVariableInThisTable(variableID, transactionID, TypeOfLock.Read);
+                table.updateReadLockToWriteLock(variableID, transactionID);
+                table.getAllLocksOnVariable(variableID);
+                table.deleteThisLock(table.getLockOfTransactionOnVariable(variableID, transactionID));
+            }
+            return 5L * variables.length;
+        };
+    }
+
+
+    /**
+     *  A chain with one version committed at every time up to its length,
+     *  then snapshots starting at random times look up the value they see
+     */
+    private static Workload versions(int chainLength, int lookupCount) {
+        VersionChain chain = new VersionChain(0, 0);
+        for (int time = 1; time < chainLength; time++) {
+            chain.append(time, time);
+        }
+        int[] startTimes = randomInts(1 << 16, chainLength);
+        return () -> {
+            long sum = 0;
+            for (int i = 0; i < lookupCount; i++) {
+                int position = chain.findLatestBefore(startTimes[i & (startTimes.length - 1)]);
+                sum += chain.getValue(position);
+            }
+            // use the values so the lookups cannot be optimized away
+            if (sum == Long.MIN_VALUE) {
+                System.out.println(sum);
+            }
+            return lookupCount;
+        };
+    }
+
+
+    /**
+     *  This many transactions each waiting for the next one and for two random younger ones,
+     *  and every hundredth waited for by the one a hundred later, so the graph is made of large cycles.
+     *  One detection over the whole graph counts as one operation.
+     */
+    private static Workload deadlock(int transactionCount, int detectionCount) {
+        WaitForGraph graph = new WaitForGraph();
+        Random random = new Random(SEED);
+        for (int from = 1; from < transactionCount; from++) {
+            graph.addWaitFor(new WaitFor(from, from + 1, from));
+            for (int i = 0; i < 2; i++) {
+                int to = from + 1 + random.nextInt(transactionCount - from);
+                graph.addWaitFor(new WaitFor(from, to, from));
+            }
+            if (from % 100 == 0) {
+                graph.addWaitFor(new WaitFor(from, from - 99, from));
+            }
+        }
+        return () -> {
+            long victims = 0;
+            for (int i = 0; i < detectionCount; i++) {
+                victims += graph.findDeadlockVictims().size();
+            }
+            if (victims < 0) {
+                System.out.println(victims);
+            }
+            return detectionCount;
+        };
+    }
+
+    private static int[] randomInts(int count, int bound) {
+        Random random = new Random(SEED);
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = 1 + random.nextInt(bound);
+        }
+        return result;
+    }
+}
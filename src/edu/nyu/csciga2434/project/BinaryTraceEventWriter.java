@@ -0,0 +1,87 @@
+package edu.nyu.csciga2434.project;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the events to a binary trace, which is much smaller and cheaper to write than the text.
+ * Every event is 25 bytes: the ordinal of its type in one byte followed by its six int fields.
+ * A command is the byte 0xFF, the length of its text in an int and the text in UTF-8.
+ * A trace can be read back into any other listener, e.g. a TextEventRenderer to look at it.
+ */
+public class BinaryTraceEventWriter implements EngineEventListener {
+
+    private static final int COMMAND_MARK = 0xFF;
+
+    private final DataOutputStream out;
+
+    public BinaryTraceEventWriter(OutputStream out) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+    }
+
+
+    @Override
+    public synchronized void onCommand(CharSequence command) {
+        try {
+            byte[] text = command.toString().getBytes(StandardCharsets.UTF_8);
+            out.writeByte(COMMAND_MARK);
+            out.writeInt(text.length);
+            out.write(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void onEvent(EventType type, int transactionID, int variableID, int siteID, int value, int time, int otherTransactionID) {
+        try {
+            out.writeByte(type.ordinal());
+            out.writeInt(transactionID);
+            out.writeInt(variableID);
+            out.writeInt(siteID);
+            out.writeInt(value);
+            out.writeInt(time);
+            out.writeInt(otherTransactionID);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    /**
+     *  read a trace written by this writer and report every entry in it to the listener
+     */
+    public static void replay(InputStream trace, EngineEventListener listener) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(trace, 1 << 16));
+        EventType[] types = EventType.values();
+        int kind;
+        while ((kind = in.read()) != -1) {
+            if (kind == COMMAND_MARK) {
+                byte[] text = new byte[in.readInt()];
+                in.readFully(text);
+                listener.onCommand(new String(text, StandardCharsets.UTF_8));
+            } else {
+                listener.onEvent(types[kind], in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt());
+            }
+        }
+        listener.flush();
+    }
+}
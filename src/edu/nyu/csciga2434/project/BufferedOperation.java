@@ -1,5 +1,7 @@
 package edu.nyu.csciga2434.project;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * User: Minda Fang
  * Date: 12/2/16
@@ -16,7 +18,12 @@ package edu.nyu.csciga2434.project;
  * a field for the type of this transaction,
  * a field for the type of this buffered operation,
  * a field for read/write value,
- * a field for this operation buffered time.
+ * a field for this operation buffered time,
+ * a field for the order in which it was put into the wait queues, which breaks ties between the same buffered time,
+ * a field for the time it was put into its wait queue this time, while the buffered time is the first time,
+ * a field for the site of the lock it waits for, 0 if it waits for another buffered operation or for its variable,
+ * a field for the buffered operation whose block by a lock started the lock wait this one is part of, null if none started yet,
+ * a field for the future of the client waiting for this operation, null if there is none.
  */
 public class BufferedOperation {
     private final TypeOfBufferedOperation typeOfBufferedOperation;
@@ -27,6 +34,11 @@ public class BufferedOperation {
     private final TypeOfOperation typeOfOperation;
     private final int value;
     private final int bufferedTime;
+    private long sequence;
+    private int queuedTime;
+    private int blockingSiteID;
+    private BufferedOperation lockWait;
+    private CompletableFuture<OperationResult> result;
 
     public BufferedOperation(TypeOfBufferedOperation typeOfBufferedOperation, int transactionID, int previousWaitingTransactionID, int variableID, TypeOfTransaction typeOfTransaction, TypeOfOperation typeOfOperation, int value, int bufferedTime) {
         this.typeOfBufferedOperation = typeOfBufferedOperation;
@@ -70,4 +82,44 @@ public class BufferedOperation {
     public int getValue() {
         return value;
     }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public int getQueuedTime() {
+        return queuedTime;
+    }
+
+    public void setQueuedTime(int queuedTime) {
+        this.queuedTime = queuedTime;
+    }
+
+    public int getBlockingSiteID() {
+        return blockingSiteID;
+    }
+
+    public void setBlockingSiteID(int blockingSiteID) {
+        this.blockingSiteID = blockingSiteID;
+    }
+
+    public BufferedOperation getLockWait() {
+        return lockWait;
+    }
+
+    public void setLockWait(BufferedOperation lockWait) {
+        this.lockWait = lockWait;
+    }
+
+    public CompletableFuture<OperationResult> getResult() {
+        return result;
+    }
+
+    public void setResult(CompletableFuture<OperationResult> result) {
+        this.result = result;
+    }
 }
@@ -7,11 +7,14 @@ import java.util.Comparator;
  * Date: 12/2/16
  * Time: 5:49 PM
  *
- * Used for sorting buffered operations according to their buffered time
+ * Used for sorting buffered operations according to their buffered time, and then the order they were buffered
  */
 public class BufferedOperationComparator implements Comparator<BufferedOperation> {
     @Override
     public int compare(BufferedOperation bo1, BufferedOperation bo2) {
-        return bo1.getBufferedTime() - bo2.getBufferedTime();
+        if (bo1.getBufferedTime() != bo2.getBufferedTime()) {
+            return bo1.getBufferedTime() - bo2.getBufferedTime();
+        }
+        return Long.compare(bo1.getSequence(), bo2.getSequence());
     }
 }
\ No newline at end of file
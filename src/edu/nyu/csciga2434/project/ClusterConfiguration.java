@@ -0,0 +1,125 @@
+package edu.nyu.csciga2434.project;
+
+/**
+ * The topology the transaction manager is started with.
+ * Inside the configuration,
+ * there is
+ * a field for the number of sites, numbered 1 to siteTotalNumber,
+ * a field for the number of variables, numbered 1 to variableTotalNumber,
+ * a field for the number of copies of a replicated variable,
+ * a field for the policy placing the copies on sites,
+ * a field for the number of threads doing the per-site part of commit and abort, 0 meaning it is done one site after another,
+ * a field for where the sites keep their committed state,
+ * a field for the number of replicated variables a recovered site copies from an up replica in one tick,
+ * 0 meaning a recovered copy waits for a new committed write before it can be read, as before,
+ * a field for how concurrent transactions are kept apart.
+ */
+public class ClusterConfiguration {
+
+    private static final int DEFAULT_SITE_TOTAL_NUMBER = 10;
+    private static final int DEFAULT_VARIABLE_TOTAL_NUMBER = 20;
+
+    private final int siteTotalNumber;
+    private final int variableTotalNumber;
+    private final int replicationFactor;
+    private final PlacementPolicy placementPolicy;
+    private final int siteWorkerThreads;
+    private final StorageConfiguration storageConfiguration;
+    private final int catchUpBatchSize;
+    private final ConcurrencyConfiguration concurrencyConfiguration;
+
+    public ClusterConfiguration(int siteTotalNumber, int variableTotalNumber, int replicationFactor, PlacementPolicy placementPolicy) {
+        this(siteTotalNumber, variableTotalNumber, replicationFactor, placementPolicy, 0);
+    }
+
+    public ClusterConfiguration(int siteTotalNumber, int variableTotalNumber, int replicationFactor, PlacementPolicy placementPolicy,
+                                int siteWorkerThreads) {
+        this(siteTotalNumber, variableTotalNumber, replicationFactor, placementPolicy, siteWorkerThreads, StorageConfiguration.inMemory());
+    }
+
+    public ClusterConfiguration(int siteTotalNumber, int variableTotalNumber, int replicationFactor, PlacementPolicy placementPolicy,
+                                int siteWorkerThreads, StorageConfiguration storageConfiguration) {
+        this(siteTotalNumber, variableTotalNumber, replicationFactor, placementPolicy, siteWorkerThreads, storageConfiguration, 0);
+    }
+
+    public ClusterConfiguration(int siteTotalNumber, int variableTotalNumber, int replicationFactor, PlacementPolicy placementPolicy,
+                                int siteWorkerThreads, StorageConfiguration storageConfiguration, int catchUpBatchSize) {
+        this(siteTotalNumber, variableTotalNumber, replicationFactor, placementPolicy, siteWorkerThreads, storageConfiguration,
+                catchUpBatchSize, ConcurrencyConfiguration.locking());
+    }
+
+    public ClusterConfiguration(int siteTotalNumber, int variableTotalNumber, int replicationFactor, PlacementPolicy placementPolicy,
+                                int siteWorkerThreads, StorageConfiguration storageConfiguration, int catchUpBatchSize,
+                                ConcurrencyConfiguration concurrencyConfiguration) {
+        if (siteTotalNumber <= 0 || variableTotalNumber <= 0) {
+            throw new IllegalArgumentException("There should be at least one site and one variable.");
+        }
+        if (replicationFactor <= 0) {
+            throw new IllegalArgumentException("The replication factor should be positive.");
+        }
+        if (placementPolicy == null) {
+            throw new IllegalArgumentException("The placement policy should be given.");
+        }
+        if (siteWorkerThreads < 0) {
+            throw new IllegalArgumentException("The number of site worker threads should not be negative.");
+        }
+        if (storageConfiguration == null) {
+            throw new IllegalArgumentException("The storage configuration should be given.");
+        }
+        if (catchUpBatchSize < 0) {
+            throw new IllegalArgumentException("The catch-up batch size should not be negative.");
+        }
+        if (concurrencyConfiguration == null) {
+            throw new IllegalArgumentException("The concurrency configuration should be given.");
+        }
+        this.siteTotalNumber = siteTotalNumber;
+        this.variableTotalNumber = variableTotalNumber;
+        this.replicationFactor = replicationFactor;
+        this.placementPolicy = placementPolicy;
+        this.siteWorkerThreads = siteWorkerThreads;
+        this.storageConfiguration = storageConfiguration;
+        this.catchUpBatchSize = catchUpBatchSize;
+        this.concurrencyConfiguration = concurrencyConfiguration;
+    }
+
+
+    /**
+     *  10 sites, 20 variables, odd variables at one site and even variables at all sites
+     */
+    public static ClusterConfiguration defaultConfiguration() {
+        return new ClusterConfiguration(DEFAULT_SITE_TOTAL_NUMBER, DEFAULT_VARIABLE_TOTAL_NUMBER,
+                DEFAULT_SITE_TOTAL_NUMBER, new ModuloPlacementPolicy());
+    }
+
+    public int getSiteTotalNumber() {
+        return siteTotalNumber;
+    }
+
+    public int getVariableTotalNumber() {
+        return variableTotalNumber;
+    }
+
+    public int getReplicationFactor() {
+        return replicationFactor;
+    }
+
+    public PlacementPolicy getPlacementPolicy() {
+        return placementPolicy;
+    }
+
+    public int getSiteWorkerThreads() {
+        return siteWorkerThreads;
+    }
+
+    public StorageConfiguration getStorageConfiguration() {
+        return storageConfiguration;
+    }
+
+    public int getCatchUpBatchSize() {
+        return catchUpBatchSize;
+    }
+
+    public ConcurrencyConfiguration getConcurrencyConfiguration() {
+        return concurrencyConfiguration;
+    }
+}
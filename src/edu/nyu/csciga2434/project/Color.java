@@ -1,15 +0,0 @@
-package edu.nyu.csciga2434.project;
-
-/**
- * User: Minda Fang
- * Date: 12/1/16
- * Time: 8:25 PM
- *
- * Used for indicating if a vertex is visited in a DFS traversal
- * Black - visited
- * White - not visited yet
- */
-public enum Color {
-    white,
-    black
-}
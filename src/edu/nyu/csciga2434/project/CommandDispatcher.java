@@ -0,0 +1,126 @@
+package edu.nyu.csciga2434.project;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lets many client threads submit commands to one transaction manager at the same time.
+ * Submitting never waits for the manager, the commands are put into a queue.
+ * A single tick thread takes everything submitted since the last tick, up to maxCommandsPerTick commands,
+ * and runs it as one tick, so the more clients there are, the more work is done per tick.
+ * Commands of one submission stay in the order they were written, submissions are run in the order they arrived.
+ */
+public class CommandDispatcher {
+
+    private static final long POLL_INTERVAL_MILLIS = 50;
+
+    private final TransactionManager manager;
+    private final int maxCommandsPerTick;
+    private final BlockingQueue<SubmittedCommand> submittedCommands;
+    private final Thread tickThread;
+    private volatile boolean running;
+
+    public CommandDispatcher(TransactionManager manager, int maxCommandsPerTick) {
+        if (maxCommandsPerTick <= 0) {
+            throw new IllegalArgumentException("At least one command should be run per tick.");
+        }
+        this.manager = manager;
+        this.maxCommandsPerTick = maxCommandsPerTick;
+        this.submittedCommands = new LinkedBlockingQueue<>();
+        this.tickThread = new Thread(this::runTicks, "tick");
+        this.running = false;
+    }
+
+
+    /**
+     *  start the tick thread
+     */
+    public void start() {
+        this.running = true;
+        this.tickThread.start();
+    }
+
+
+    /**
+     *  Submit a line of commands separated by ";", e.g. "begin(T1); W(T1,x2,20)".
+     *  The returned future is completed with the time of the tick that ran them.
+     *  A line which cannot be parsed is refused here with an IllegalArgumentException,
+     *  so it never fails the lines of other clients run in the same tick.
+     *  Can be called from any thread.
+     */
+    public CompletableFuture<Integer> submit(String commandLine) {
+        if (!running) {
+            throw new IllegalStateException("The dispatcher is not running.");
+        }
+        TransactionManager.parseCommandLine(commandLine);
+        SubmittedCommand command = new SubmittedCommand(commandLine);
+        submittedCommands.add(command);
+        return command.done;
+    }
+
+
+    /**
+     *  Stop taking new commands, wait for the ones already submitted to be run and stop the manager
+     */
+    public void shutdown() throws InterruptedException {
+        this.running = false;
+        this.tickThread.join();
+        this.manager.shutdown();
+    }
+
+
+    /**
+     *  body of the tick thread
+     */
+    private void runTicks() {
+        List<SubmittedCommand> batch = new ArrayList<>();
+        while (running || !submittedCommands.isEmpty()) {
+            SubmittedCommand first;
+            try {
+                first = submittedCommands.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            if (first == null) {
+                continue;
+            }
+            batch.add(first);
+            submittedCommands.drainTo(batch, maxCommandsPerTick - 1);
+
+            StringBuilder commandLine = new StringBuilder();
+            for (SubmittedCommand command : batch) {
+                if (commandLine.length() != 0) {
+                    commandLine.append(';');
+                }
+                commandLine.append(command.commandLine);
+            }
+            try {
+                manager.readCommand(commandLine.toString());
+                int tickTime = manager.getTime();
+                batch.forEach(command -> command.done.complete(tickTime));
+            } catch (RuntimeException e) {
+                batch.forEach(command -> command.done.completeExceptionally(e));
+            }
+            batch.clear();
+        }
+    }
+
+
+    /**
+     *  a submitted line of commands and the future telling its client when it is done
+     */
+    private static final class SubmittedCommand {
+        private final String commandLine;
+        private final CompletableFuture<Integer> done;
+
+        private SubmittedCommand(String commandLine) {
+            this.commandLine = commandLine;
+            this.done = new CompletableFuture<>();
+        }
+    }
+}
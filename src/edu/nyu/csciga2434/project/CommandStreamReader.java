@@ -0,0 +1,436 @@
+package edu.nyu.csciga2434.project;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads a file of command lines and runs it on a transaction manager, line by line as readCommand would.
+ * A parser thread reads the file through a channel into a large buffer
+ * and parses the bytes straight into the type and numbers of every command, without building any string,
+ * handing them over in chunks of a fixed number of commands.
+ * The calling thread meanwhile runs the chunks already parsed through openTick, runCommand and closeTick.
+ * The chunks are reused once run, so a file of any size is replayed with a few chunks in memory.
+ *
+ * Lines are split the same way as with a Scanner and readCommand:
+ * by \n, \r\n or \r, with the blank lines at the end of the file dropped,
+ * and into commands by ";" with the empty commands at the end of a line dropped.
+ */
+public class CommandStreamReader {
+
+    private static final int CHUNK_CAPACITY = 4096;
+    private static final int CHUNK_NUMBER = 4;
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    // the type of the entry closing a line in a chunk
+    private static final int LINE_END = -1;
+    private static final TypeOfCommand[] COMMAND_TYPES = TypeOfCommand.values();
+
+    private static final byte[] BEGIN = prefix("begin(");
+    private static final byte[] BEGIN_READ_ONLY = prefix("beginRO(");
+    private static final byte[] READ = prefix("R(");
+    private static final byte[] WRITE = prefix("W(");
+    private static final byte[] DUMP_ALL = prefix("dump()");
+    private static final byte[] DUMP_VARIABLE = prefix("dump(x");
+    private static final byte[] DUMP = prefix("dump(");
+    private static final byte[] END = prefix("end(");
+    private static final byte[] FAIL = prefix("fail(");
+    private static final byte[] RECOVER = prefix("recover(");
+
+    /**
+     *  Commands parsed from the file, in the order they are to be run, with their text kept for the echo
+     */
+    private static class Chunk {
+        private int count;
+        private final int[] types;
+        private final int[] firsts;
+        private final int[] seconds;
+        private final int[] thirds;
+        private final int[] textStarts;
+        private final int[] textLengths;
+        private byte[] text;
+        private int textLength;
+        // no chunk follows this one
+        private boolean last;
+        // why the parser stopped, if it did not reach the end of the file
+        private Exception failure;
+
+        private Chunk() {
+            this.types = new int[CHUNK_CAPACITY];
+            this.firsts = new int[CHUNK_CAPACITY];
+            this.seconds = new int[CHUNK_CAPACITY];
+            this.thirds = new int[CHUNK_CAPACITY];
+            this.textStarts = new int[CHUNK_CAPACITY];
+            this.textLengths = new int[CHUNK_CAPACITY];
+            this.text = new byte[CHUNK_CAPACITY * 16];
+        }
+
+        private boolean isFull() {
+            return count == CHUNK_CAPACITY;
+        }
+
+        private void add(int type, int first, int second, int third, byte[] bytes, int start, int length) {
+            if (textLength + length > text.length) {
+                text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + length));
+            }
+            System.arraycopy(bytes, start, text, textLength, length);
+            types[count] = type;
+            firsts[count] = first;
+            seconds[count] = second;
+            thirds[count] = third;
+            textStarts[count] = textLength;
+            textLengths[count] = length;
+            textLength += length;
+            count++;
+        }
+
+        private void clear() {
+            count = 0;
+            textLength = 0;
+            last = false;
+            failure = null;
+        }
+    }
+
+
+    /**
+     *  A view of a command text in a chunk, one byte per character, moved from command to command
+     */
+    private static class ByteText implements CharSequence {
+        private byte[] bytes;
+        private int start;
+        private int length;
+
+        private void set(byte[] bytes, int start, int length) {
+            this.bytes = bytes;
+            this.start = start;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes[start + index] & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return toString().substring(from, to);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, start, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    private final File file;
+
+    // used by the parser thread only
+    private BlockingQueue<Chunk> freeChunks;
+    private BlockingQueue<Chunk> parsedChunks;
+    private Chunk chunk;
+    // blank lines not passed on yet, since they are dropped if nothing but blank lines follows them
+    private long pendingBlankLines;
+    private final int[] numbers = new int[3];
+
+    public CommandStreamReader(File file) {
+        this.file = file;
+    }
+
+
+    /**
+     *  Run every line of the file on this manager, return the number of lines run
+     */
+    public long replay(TransactionManager manager) throws IOException {
+        this.freeChunks = new ArrayBlockingQueue<>(CHUNK_NUMBER);
+        this.parsedChunks = new ArrayBlockingQueue<>(CHUNK_NUMBER);
+        for (int i = 0; i < CHUNK_NUMBER; i++) {
+            freeChunks.add(new Chunk());
+        }
+        Thread parserThread = new Thread(this::parseFile, "command-parser");
+        parserThread.setDaemon(true);
+        parserThread.start();
+
+        ByteText text = new ByteText();
+        boolean lineOpen = false;
+        long lineNumber = 0;
+        try {
+            while (true) {
+                Chunk parsed = parsedChunks.take();
+                for (int i = 0; i < parsed.count; i++) {
+                    if (!lineOpen) {
+                        manager.openTick();
+                        lineOpen = true;
+                    }
+                    if (parsed.types[i] == LINE_END) {
+                        lineOpen = false;
+                        manager.closeTick();
+                        lineNumber++;
+                        continue;
+                    }
+                    text.set(parsed.text, parsed.textStarts[i], parsed.textLengths[i]);
+                    manager.runCommand(COMMAND_TYPES[parsed.types[i]], parsed.firsts[i], parsed.seconds[i], parsed.thirds[i], text);
+                }
+                boolean last = parsed.last;
+                Exception failure = parsed.failure;
+                parsed.clear();
+                freeChunks.put(parsed);
+                if (failure instanceof IOException) {
+                    throw (IOException) failure;
+                } else if (failure != null) {
+                    throw (RuntimeException) failure;
+                }
+                if (last) {
+                    return lineNumber;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while replaying " + file + ".");
+        } finally {
+            // a command failing in the engine does not leave its tick open, nor the parser waiting for a free chunk
+            parserThread.interrupt();
+            if (lineOpen) {
+                manager.closeTick();
+            }
+        }
+    }
+
+
+    /**
+     *  body of the parser thread
+     */
+    private void parseFile() {
+        try {
+            this.chunk = freeChunks.take();
+            this.pendingBlankLines = 0;
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+                boolean endOfFile = false;
+                while (!endOfFile) {
+                    endOfFile = channel.read(buffer) < 0;
+                    byte[] bytes = buffer.array();
+                    int limit = buffer.position();
+                    int lineStart = 0;
+                    int position = 0;
+                    while (position < limit) {
+                        byte b = bytes[position];
+                        if (b != '\n' && b != '\r') {
+                            position++;
+                            continue;
+                        }
+                        if (b == '\r' && position + 1 == limit && !endOfFile) {
+                            // the \n of a \r\n may be in the next read
+                            break;
+                        }
+                        parseLine(bytes, lineStart, position);
+                        position += (b == '\r' && position + 1 < limit && bytes[position + 1] == '\n') ? 2 : 1;
+                        lineStart = position;
+                    }
+                    if (endOfFile && lineStart < limit) {
+                        parseLine(bytes, lineStart, limit);
+                        lineStart = limit;
+                    }
+                    // keep the unfinished line at the front, growing the buffer if it fills the whole buffer
+                    if (lineStart == 0 && limit == buffer.capacity()) {
+                        ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                        larger.put(bytes, 0, limit);
+                        buffer = larger;
+                    } else {
+                        System.arraycopy(bytes, lineStart, bytes, 0, limit - lineStart);
+                        buffer.position(limit - lineStart);
+                    }
+                }
+            }
+            chunk.last = true;
+            parsedChunks.put(chunk);
+        } catch (IOException | RuntimeException e) {
+            chunk.failure = e;
+            chunk.last = true;
+            try {
+                parsedChunks.put(chunk);
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     *  parse one line without its line separator
+     */
+    private void parseLine(byte[] bytes, int start, int end) throws InterruptedException {
+        if (isBlank(bytes, start, end)) {
+            pendingBlankLines++;
+            return;
+        }
+        for (; pendingBlankLines > 0; pendingBlankLines--) {
+            addCommand(TypeOfCommand.Unknown.ordinal(), 0, 0, 0, bytes, start, 0);
+            addCommand(LINE_END, 0, 0, 0, bytes, start, 0);
+        }
+        // like String.split, the empty commands at the end are dropped
+        int commandsEnd = end;
+        while (commandsEnd > start && bytes[commandsEnd - 1] == ';') {
+            commandsEnd--;
+        }
+        // every command of the line is checked before any of them is passed on, so a bad line is not run in part
+        for (int pass = 0; pass < 2; pass++) {
+            int commandStart = start;
+            while (commandStart < commandsEnd) {
+                int commandEnd = commandStart;
+                while (commandEnd < commandsEnd && bytes[commandEnd] != ';') {
+                    commandEnd++;
+                }
+                parseCommand(bytes, commandStart, commandEnd, pass == 1);
+                commandStart = commandEnd + 1;
+            }
+        }
+        addCommand(LINE_END, 0, 0, 0, bytes, start, 0);
+    }
+
+
+    /**
+     *  parse one command, trimmed like String.trim, and pass it on if add
+     */
+    private void parseCommand(byte[] bytes, int start, int end, boolean add) throws InterruptedException {
+        while (start < end && (bytes[start] & 0xff) <= ' ') {
+            start++;
+        }
+        while (end > start && (bytes[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+        TypeOfCommand type;
+        int numberStart;
+        if (startsWith(bytes, start, end, BEGIN)) {
+            type = TypeOfCommand.Begin;
+            numberStart = start + BEGIN.length;
+        } else if (startsWith(bytes, start, end, BEGIN_READ_ONLY)) {
+            type = TypeOfCommand.BeginReadOnly;
+            numberStart = start + BEGIN_READ_ONLY.length;
+        } else if (startsWith(bytes, start, end, READ)) {
+            type = TypeOfCommand.Read;
+            numberStart = start + READ.length;
+        } else if (startsWith(bytes, start, end, WRITE)) {
+            type = TypeOfCommand.Write;
+            numberStart = start + WRITE.length;
+        } else if (startsWith(bytes, start, end, DUMP_ALL)) {
+            type = TypeOfCommand.Dump;
+            numberStart = end;
+        } else if (startsWith(bytes, start, end, DUMP_VARIABLE)) {
+            type = TypeOfCommand.DumpVariable;
+            numberStart = start + DUMP_VARIABLE.length;
+        } else if (startsWith(bytes, start, end, DUMP)) {
+            type = TypeOfCommand.DumpSite;
+            numberStart = start + DUMP.length;
+        } else if (startsWith(bytes, start, end, END)) {
+            type = TypeOfCommand.End;
+            numberStart = start + END.length;
+        } else if (startsWith(bytes, start, end, FAIL)) {
+            type = TypeOfCommand.Fail;
+            numberStart = start + FAIL.length;
+        } else if (startsWith(bytes, start, end, RECOVER)) {
+            type = TypeOfCommand.Recover;
+            numberStart = start + RECOVER.length;
+        } else {
+            type = TypeOfCommand.Unknown;
+            numberStart = end;
+        }
+        int expected = numberCount(type);
+        if (parseNumbers(bytes, numberStart, end) < expected) {
+            throw new IllegalArgumentException("Cannot parse the command "
+                    + new String(bytes, start, end - start, StandardCharsets.ISO_8859_1) + ".");
+        }
+        if (add) {
+            addCommand(type.ordinal(), numbers[0], numbers[1], numbers[2], bytes, start, end - start);
+        }
+    }
+
+
+    /**
+     *  read up to three integers, each a run of digits with an optional minus sign, skipping everything else,
+     *  return how many were found
+     */
+    private int parseNumbers(byte[] bytes, int start, int end) {
+        numbers[0] = 0;
+        numbers[1] = 0;
+        numbers[2] = 0;
+        int found = 0;
+        int position = start;
+        while (position < end && found < numbers.length) {
+            byte b = bytes[position];
+            if (b < '0' || b > '9') {
+                position++;
+                continue;
+            }
+            boolean negative = position > start && bytes[position - 1] == '-';
+            int value = 0;
+            while (position < end && bytes[position] >= '0' && bytes[position] <= '9') {
+                value = value * 10 + (bytes[position] - '0');
+                position++;
+            }
+            numbers[found++] = negative ? -value : value;
+        }
+        return found;
+    }
+
+    private void addCommand(int type, int first, int second, int third, byte[] bytes, int start, int length)
+            throws InterruptedException {
+        if (chunk.isFull()) {
+            parsedChunks.put(chunk);
+            chunk = freeChunks.take();
+        }
+        chunk.add(type, first, second, third, bytes, start, length);
+    }
+
+    private static int numberCount(TypeOfCommand type) {
+        switch (type) {
+            case Write:
+                return 3;
+            case Read:
+                return 2;
+            case Dump:
+            case Unknown:
+                return 0;
+            default:
+                return 1;
+        }
+    }
+
+    private static boolean isBlank(byte[] bytes, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!Character.isWhitespace((char) (bytes[i] & 0xff))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWith(byte[] bytes, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] prefix(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,78 @@
+package edu.nyu.csciga2434.project;
+
+/**
+ * How the transaction manager keeps concurrent transactions apart.
+ * Inside the configuration,
+ * there is
+ * a field for how read-write transactions are isolated from each other,
+ * a field for how deadlocks are dealt with,
+ * a field for the number of ticks a read-write transaction waits for a lock before it is aborted, 0 meaning it waits forever,
+ * a field for the most ticks between two deadlock checks, 1 meaning the wait-for graph is checked at the end of every tick.
+ */
+public class ConcurrencyConfiguration {
+
+    private final TypeOfIsolation isolation;
+    private final TypeOfDeadlockHandling deadlockHandling;
+    private final int lockWaitTimeout;
+    private final int maxDetectionInterval;
+
+    public ConcurrencyConfiguration(TypeOfIsolation isolation) {
+        this(isolation, TypeOfDeadlockHandling.Detection);
+    }
+
+    public ConcurrencyConfiguration(TypeOfIsolation isolation, TypeOfDeadlockHandling deadlockHandling) {
+        this(isolation, deadlockHandling, 0, 1);
+    }
+
+    public ConcurrencyConfiguration(TypeOfIsolation isolation, TypeOfDeadlockHandling deadlockHandling,
+                                    int lockWaitTimeout, int maxDetectionInterval) {
+        if (isolation == null) {
+            throw new IllegalArgumentException("The isolation should be given.");
+        }
+        if (deadlockHandling == null) {
+            throw new IllegalArgumentException("The deadlock handling should be given.");
+        }
+        if (lockWaitTimeout < 0) {
+            throw new IllegalArgumentException("The lock wait timeout should not be negative.");
+        }
+        if (maxDetectionInterval < 1) {
+            throw new IllegalArgumentException("The deadlock detection interval should be at least one tick.");
+        }
+        this.isolation = isolation;
+        this.deadlockHandling = deadlockHandling;
+        this.lockWaitTimeout = lockWaitTimeout;
+        this.maxDetectionInterval = maxDetectionInterval;
+    }
+
+
+    /**
+     *  strict two-phase locking for read-write transactions, as before
+     */
+    public static ConcurrencyConfiguration locking() {
+        return new ConcurrencyConfiguration(TypeOfIsolation.Locking);
+    }
+
+    public TypeOfIsolation getIsolation() {
+        return isolation;
+    }
+
+    public TypeOfDeadlockHandling getDeadlockHandling() {
+        return deadlockHandling;
+    }
+
+    public int getLockWaitTimeout() {
+        return lockWaitTimeout;
+    }
+
+    public int getMaxDetectionInterval() {
+        return maxDetectionInterval;
+    }
+
+
+    /**
+     *  return true if read-write transactions read from snapshots
+     */
+    public boolean ifSnapshotReads() {
+        return isolation != TypeOfIsolation.Locking;
+    }
+}
@@ -8,10 +8,18 @@ package edu.nyu.csciga2434.project;
 public class ConflictingBufferedQueryReturn {
     private final boolean ifExistsAnyConflictingBufferedOperations;
     private final int bufferedConflictingTransactionID;
+    // the site of the conflicting lock, 0 if the conflict is a buffered operation
+    private final int conflictingSiteID;
 
     public ConflictingBufferedQueryReturn(boolean ifExistsAnyConflictingBufferedOperations, int bufferedConflictingTransactionID) {
+        this(ifExistsAnyConflictingBufferedOperations, bufferedConflictingTransactionID, 0);
+    }
+
+    public ConflictingBufferedQueryReturn(boolean ifExistsAnyConflictingBufferedOperations, int bufferedConflictingTransactionID,
+                                          int conflictingSiteID) {
         this.ifExistsAnyConflictingBufferedOperations = ifExistsAnyConflictingBufferedOperations;
         this.bufferedConflictingTransactionID = bufferedConflictingTransactionID;
+        this.conflictingSiteID = conflictingSiteID;
     }
 
     public boolean getIfExistsAnyConflictingBufferedOperations() {
@@ -21,4 +29,8 @@ public class ConflictingBufferedQueryReturn {
     public int getBufferedConflictingTransactionID() {
         return bufferedConflictingTransactionID;
     }
+
+    public int getConflictingSiteID() {
+        return conflictingSiteID;
+    }
 }
@@ -0,0 +1,78 @@
+package edu.nyu.csciga2434.project;
+
+import java.util.*;
+
+/**
+ * Places every site on a hash ring several times(virtual nodes).
+ * A variable is hashed onto the ring and copied to the first replicationFactor distinct sites met clockwise.
+ * Adding a site then only moves the variables next to its virtual nodes.
+ */
+public class ConsistentHashPlacementPolicy implements PlacementPolicy {
+
+    private static final int DEFAULT_VIRTUAL_NODES_PER_SITE = 64;
+
+    private final int virtualNodesPerSite;
+    private TreeMap<Long, Integer> ring;
+    private int ringSiteTotalNumber;
+
+    public ConsistentHashPlacementPolicy() {
+        this(DEFAULT_VIRTUAL_NODES_PER_SITE);
+    }
+
+    public ConsistentHashPlacementPolicy(int virtualNodesPerSite) {
+        if (virtualNodesPerSite <= 0) {
+            throw new IllegalArgumentException("The number of virtual nodes per site should be positive.");
+        }
+        this.virtualNodesPerSite = virtualNodesPerSite;
+    }
+
+    @Override
+    public int[] getReplicaSites(int variableID, int siteTotalNumber, int variableTotalNumber, int replicationFactor) {
+        if (ring == null || ringSiteTotalNumber != siteTotalNumber) {
+            buildRing(siteTotalNumber);
+        }
+        int copies = Math.min(replicationFactor, siteTotalNumber);
+        Set<Integer> chosen = new TreeSet<>();
+        Iterator<Integer> clockwise = ring.tailMap(hash(variableID), true).values().iterator();
+        while (chosen.size() < copies) {
+            if (!clockwise.hasNext()) {
+                // wrap around the ring
+                clockwise = ring.values().iterator();
+            }
+            chosen.add(clockwise.next());
+        }
+        int[] result = new int[chosen.size()];
+        int i = 0;
+        for (int siteID : chosen) {
+            result[i++] = siteID;
+        }
+        return result;
+    }
+
+
+    /**
+     *  put virtualNodesPerSite points of every site on the ring
+     */
+    private void buildRing(int siteTotalNumber) {
+        ring = new TreeMap<>();
+        for (int siteID = 1; siteID <= siteTotalNumber; siteID++) {
+            for (int node = 0; node < virtualNodesPerSite; node++) {
+                ring.put(hash(((long) siteID << 32) | node), siteID);
+            }
+        }
+        ringSiteTotalNumber = siteTotalNumber;
+    }
+
+
+    /**
+     *  64-bit finalizer of MurmurHash3, spreads close keys all over the ring
+     */
+    private static long hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -0,0 +1,31 @@
+package edu.nyu.csciga2434.project;
+
+/**
+ * Everything the transaction manager and the sites report goes through this listener instead of the console.
+ * Events are passed as primitive fields, so nothing is built or allocated unless the listener does it.
+ * It is called by the thread running the ticks only, the events of sites done by site workers are passed on
+ * afterwards in the order of site ID(see SiteEventBuffer).
+ */
+public interface EngineEventListener {
+
+    /**
+     *  a command of a text command line is about to run,
+     *  the text may be reused for the next command once this returns, so copy it if it is kept
+     */
+    void onCommand(CharSequence command);
+
+    /**
+     *  something happened, see EventType for which fields are used
+     */
+    void onEvent(EventType type, int transactionID, int variableID, int siteID, int value, int time, int otherTransactionID);
+
+    /**
+     *  make sure everything reported so far is written out
+     */
+    void flush();
+
+    /**
+     *  flush and release what the listener holds
+     */
+    void close();
+}
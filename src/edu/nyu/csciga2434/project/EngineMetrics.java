@@ -0,0 +1,80 @@
+package edu.nyu.csciga2434.project;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The metrics a transaction manager keeps about itself while it runs,
+ * there is a field for the ticks from begin to commit of every committed transaction,
+ * a field for the ticks every buffered operation waited before it was done or dropped,
+ * a field for the ticks every read-write transaction held locks, from its first lock to its commit or abort,
+ * a field for the number of commits,
+ * a field for the number of aborts of each cause,
+ * and a field for the number of deadlock checks, with the number of them which found a cycle.
+ * Recording is a few increments, so it is always on.
+ * The sizes of the lock tables, version chains and wait queues are not kept here, they are read when a snapshot is taken.
+ */
+
+public class EngineMetrics {
+
+    private final LatencyHistogram transactionLifetime;
+    private final LatencyHistogram blockDuration;
+    private final LatencyHistogram lockHoldTime;
+    private long commitCount;
+    private final long[] abortCounts;
+    private long deadlockCheckCount;
+    private long deadlockFoundCount;
+
+    public EngineMetrics() {
+        this.transactionLifetime = new LatencyHistogram();
+        this.blockDuration = new LatencyHistogram();
+        this.lockHoldTime = new LatencyHistogram();
+        this.abortCounts = new long[TypeOfAbortCause.values().length];
+    }
+
+    public void recordCommit(int lifetime) {
+        this.commitCount++;
+        this.transactionLifetime.record(lifetime);
+    }
+
+    public void recordAbort(TypeOfAbortCause cause) {
+        this.abortCounts[cause.ordinal()]++;
+    }
+
+    public void recordBlock(int duration) {
+        this.blockDuration.record(duration);
+    }
+
+    public void recordLockHold(int duration) {
+        this.lockHoldTime.record(duration);
+    }
+
+    public void recordDeadlockCheck(boolean deadlockFound) {
+        this.deadlockCheckCount++;
+        if (deadlockFound) {
+            this.deadlockFoundCount++;
+        }
+    }
+
+
+    /**
+     *  a snapshot of everything recorded up to this time, together with the gauges read by the caller
+     */
+    public MetricsSnapshot snapshot(int time, Map<String, Long> gauges) {
+        Map<String, Long> counters = new LinkedHashMap<>();
+        counters.put("commits", commitCount);
+        long abortTotal = 0;
+        for (TypeOfAbortCause cause : TypeOfAbortCause.values()) {
+            counters.put("aborts." + cause, abortCounts[cause.ordinal()]);
+            abortTotal += abortCounts[cause.ordinal()];
+        }
+        counters.put("aborts", abortTotal);
+        counters.put("deadlockChecks", deadlockCheckCount);
+        counters.put("deadlockChecksWithCycle", deadlockFoundCount);
+        Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+        histograms.put("transactionLifetime", transactionLifetime.copy());
+        histograms.put("blockDuration", blockDuration.copy());
+        histograms.put("lockHoldTime", lockHoldTime.copy());
+        return new MetricsSnapshot(time, counters, gauges, histograms);
+    }
+}
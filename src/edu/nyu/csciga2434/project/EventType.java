@@ -0,0 +1,139 @@
+package edu.nyu.csciga2434.project;
+
+/**
+ * Used for indicating what happened in the engine.
+ * Every event carries the same primitive fields: transaction ID, variable ID, site ID, value, time and the other transaction ID.
+ * The comment of each type tells which of them are used, the others are 0.
+ */
+public enum EventType {
+    // time - a new tick starts
+    NewRound,
+    // transaction - begin(T) through the client API
+    CommandBegin,
+    // transaction - beginRO(T) through the client API
+    CommandBeginReadOnly,
+    // transaction, variable - R(T, x) through the client API
+    CommandRead,
+    // transaction, variable, value - W(T, x, v) through the client API
+    CommandWrite,
+    // transaction - end(T) through the client API
+    CommandEnd,
+    // site - fail(s) through the client API
+    CommandFail,
+    // site - recover(s) through the client API
+    CommandRecover,
+    // transaction, value(number of operations) - a batch of reads and writes through the client API,
+    //      followed by a CommandRead or CommandWrite for each of them
+    CommandBatch,
+
+    // transaction, variable, value, time(buffered time), other(transaction waited for) - a buffered operation is retried
+    ReadOnlyReadRetried,
+    ReadRetried,
+    WriteRetried,
+
+    // transaction
+    ReadOnlyTransactionBegan,
+    ReadWriteTransactionBegan,
+    BeginRejected,
+    // transaction, variable
+    ReadRejected,
+    WriteRejectedNoTransaction,
+    WriteRejectedReadOnly,
+
+    // transaction, variable, site, value
+    SnapshotRead,
+    ReadSucceeded,
+    // transaction, variable, value
+    WriteSucceeded,
+    WriteSucceededAfterLocking,
+
+    // transaction, variable - blocked since no copy can be read or written at this time
+    ReadOnlyReadBuffered,
+    VariableUnavailableBuffered,
+    // transaction, variable, other - blocked behind a buffered operation of the other transaction
+    BlockedByBufferedOperation,
+    // transaction, variable, other
+    ReadBlocked,
+    // transaction, variable, value, other
+    WriteBlocked,
+    // transaction, variable, other
+    BlockedByLock,
+    // transaction, variable, site, other
+    BlockedByLockAtSite,
+
+    // transaction, variable, site
+    ReadLockGranted,
+    WriteLockGranted,
+    WriteLockRefused,
+    ReadLockUpgraded,
+    ReadLockAlreadyHeld,
+    WriteLockAlreadyHeld,
+    ReadLockReleased,
+    WriteLockReleased,
+
+    // transaction, variable, site, value - a write is kept as the uncommitted value of a copy
+    UncommittedWrite,
+    // transaction, variable, site, value, time - a copy gets its new committed value
+    VariableCommitted,
+    // transaction, variable, site, time
+    CommitVariableMissing,
+
+    // transaction, variable - aborted at end since another transaction committed the variable after it started
+    SnapshotWriteConflict,
+    // transaction - aborted at end since it has read-write conflicts both in and out
+    SerializationConflict,
+
+    // transaction
+    EndRequested,
+    EndRejected,
+    AlreadyAborted,
+    CommitBlocked,
+    ReadOnlyCommitWaiting,
+    Committed,
+    // transaction - nothing is printed for it
+    Aborted,
+    // transaction - the records of a committing transaction
+    ReportHeader,
+    ReportEmpty,
+    // transaction, variable, site, value, time
+    ReportRead,
+    // transaction, variable, value, time
+    ReportWrite,
+
+    // variable, site, value, time(tick of the catch-up) - a recovered copy got the latest committed value from an up replica
+    VariableCaughtUp,
+
+    // site
+    SiteFailed,
+    FailRejected,
+    SiteRecovered,
+    RecoverRejected,
+    // transaction - it should be aborted since a site it used has failed
+    AffectedBySiteFailure,
+    ToBeAbortedHeader,
+    // transaction
+    ToBeAborted,
+
+    // transaction, other - wait-die: aborted instead of waiting for the older other transaction
+    DiedInsteadOfWaiting,
+    // transaction, other - wound-wait: aborted since the older other transaction would wait for it
+    WoundedByOlder,
+
+    // transaction, variable, time(buffered time) - aborted since it waited for a lock longer than its timeout
+    LockWaitTimedOut,
+
+    WaitForHeader,
+    // transaction, other - the transaction waits for the other one
+    WaitFor,
+    CycleFound,
+    NoDeadlockFound,
+    // transaction
+    DeadlockVictim,
+
+    // site
+    DumpSite,
+    // variable, site, value
+    DumpValue,
+    // site
+    DumpEnd
+}
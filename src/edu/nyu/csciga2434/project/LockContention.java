@@ -0,0 +1,45 @@
+package edu.nyu.csciga2434.project;
+
+/**
+ * How much one variable, site or blocking transaction held up others,
+ * there is a field for its ID,
+ * a field for the number of lock waits on it, or caused by it for a transaction,
+ * a field for the ticks these waits took, counted when each wait ends,
+ * and a field for the number of times a read lock on it could not be upgraded to a write lock, 0 for a transaction.
+ */
+
+public class LockContention {
+
+    private final int id;
+    private final long waitCount;
+    private final long totalWaitTime;
+    private final long upgradeConflictCount;
+
+    public LockContention(int id, long waitCount, long totalWaitTime, long upgradeConflictCount) {
+        this.id = id;
+        this.waitCount = waitCount;
+        this.totalWaitTime = totalWaitTime;
+        this.upgradeConflictCount = upgradeConflictCount;
+    }
+
+    public int getID() {
+        return id;
+    }
+
+    public long getWaitCount() {
+        return waitCount;
+    }
+
+    public long getTotalWaitTime() {
+        return totalWaitTime;
+    }
+
+    public long getUpgradeConflictCount() {
+        return upgradeConflictCount;
+    }
+
+    @Override
+    public String toString() {
+        return "waits=" + waitCount + " waitTime=" + totalWaitTime + " upgradeConflicts=" + upgradeConflictCount;
+    }
+}
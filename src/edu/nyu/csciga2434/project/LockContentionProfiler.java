@@ -0,0 +1,142 @@
+package edu.nyu.csciga2434.project;
+
+import java.util.*;
+
+/**
+ * Counts the lock waits of a transaction manager by the variable waited on, the site of the conflicting lock
+ * and the transaction waited for, and the read locks which could not be upgraded to write locks.
+ * A wait is counted when an operation is first blocked by a lock and all of its ticks are added once,
+ * when the operation goes ahead or is dropped with its transaction, so an operation blocked again on retry is still one wait.
+ * A wait behind an operation buffered earlier, rather than behind a lock, has no site.
+ * The variables and the blocking transactions are kept ordered by the ticks they were waited on, then by their waits,
+ * so a top-N report takes N steps whatever the number of locks.
+ * Only the MAX_BLOCKERS worst blocking transactions are remembered, a new one pushes out the least bad,
+ * so the blockers far below the top may be missing once that many transactions have made others wait.
+ */
+
+public class LockContentionProfiler {
+
+    private static final int MAX_BLOCKERS = 4096;
+
+    private static final class Counter {
+        private final int id;
+        private long waitCount;
+        private long totalWaitTime;
+        private long upgradeConflictCount;
+
+        private Counter(int id) {
+            this.id = id;
+        }
+
+        private LockContention toLockContention() {
+            return new LockContention(id, waitCount, totalWaitTime, upgradeConflictCount);
+        }
+    }
+
+    // most ticks waited first, then most waits, then most upgrade conflicts, then the smallest ID
+    private static final Comparator<Counter> RANKING = (a, b) -> {
+        if (a.totalWaitTime != b.totalWaitTime) {
+            return Long.compare(b.totalWaitTime, a.totalWaitTime);
+        }
+        if (a.waitCount != b.waitCount) {
+            return Long.compare(b.waitCount, a.waitCount);
+        }
+        if (a.upgradeConflictCount != b.upgradeConflictCount) {
+            return Long.compare(b.upgradeConflictCount, a.upgradeConflictCount);
+        }
+        return Integer.compare(a.id, b.id);
+    };
+
+    // variable ID -> its counter, and all of them ranked
+    private final Map<Integer, Counter> variables;
+    private final TreeSet<Counter> rankedVariables;
+    // transaction ID -> its counter as a blocker, and all of them ranked
+    private final Map<Integer, Counter> blockers;
+    private final TreeSet<Counter> rankedBlockers;
+    // by site ID, from 1
+    private final Counter[] sites;
+
+    public LockContentionProfiler(int siteTotalNumber) {
+        this.variables = new HashMap<>();
+        this.rankedVariables = new TreeSet<>(RANKING);
+        this.blockers = new HashMap<>();
+        this.rankedBlockers = new TreeSet<>(RANKING);
+        this.sites = new Counter[siteTotalNumber + 1];
+        for (int siteID = 1; siteID <= siteTotalNumber; siteID++) {
+            sites[siteID] = new Counter(siteID);
+        }
+    }
+
+
+    /**
+     *  An operation on this variable starts waiting for the blocking transaction, for its lock at this site(0 if none)
+     */
+    public void recordWaitStart(int variableID, int siteID, int blockerID) {
+        addWait(variables, rankedVariables, variableID, 1, 0, Integer.MAX_VALUE);
+        addWait(blockers, rankedBlockers, blockerID, 1, 0, MAX_BLOCKERS);
+        if (siteID != 0) {
+            sites[siteID].waitCount++;
+        }
+    }
+
+
+    /**
+     *  A wait recorded by recordWaitStart ends after this many ticks
+     */
+    public void recordWaitEnd(int variableID, int siteID, int blockerID, int duration) {
+        addWait(variables, rankedVariables, variableID, 0, duration, Integer.MAX_VALUE);
+        addWait(blockers, rankedBlockers, blockerID, 0, duration, MAX_BLOCKERS);
+        if (siteID != 0) {
+            sites[siteID].totalWaitTime += duration;
+        }
+    }
+
+
+    /**
+     *  A transaction holding a read lock on this variable at this site could not upgrade it, another one holds a lock too
+     */
+    public void recordUpgradeConflict(int variableID, int siteID) {
+        Counter counter = variables.computeIfAbsent(variableID, Counter::new);
+        rankedVariables.remove(counter);
+        counter.upgradeConflictCount++;
+        rankedVariables.add(counter);
+        sites[siteID].upgradeConflictCount++;
+    }
+
+    public LockContentionReport report(int time, int topN) {
+        List<LockContention> siteList = new ArrayList<>(sites.length - 1);
+        for (int siteID = 1; siteID < sites.length; siteID++) {
+            siteList.add(sites[siteID].toLockContention());
+        }
+        return new LockContentionReport(time, top(rankedVariables, topN), top(rankedBlockers, topN), siteList);
+    }
+
+    private static void addWait(Map<Integer, Counter> counters, TreeSet<Counter> ranked, int id, int waits, int duration,
+                                int capacity) {
+        Counter counter = counters.get(id);
+        if (counter == null) {
+            if (counters.size() >= capacity) {
+                counters.remove(ranked.pollLast().id);
+            }
+            counter = new Counter(id);
+            counters.put(id, counter);
+        } else {
+            // it has to be taken out before its rank changes
+            ranked.remove(counter);
+        }
+        counter.waitCount += waits;
+        counter.totalWaitTime += duration;
+        ranked.add(counter);
+    }
+
+    private static List<LockContention> top(TreeSet<Counter> ranked, int topN) {
+        List<LockContention> result = new ArrayList<>(Math.min(topN, ranked.size()));
+        for (Counter counter : ranked) {
+            if (result.size() >= topN) {
+                break;
+            }
+            result.add(counter.toLockContention());
+        }
+        return result;
+    }
+}
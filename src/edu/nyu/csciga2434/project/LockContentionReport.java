@@ -0,0 +1,75 @@
+package edu.nyu.csciga2434.project;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The lock contention of a transaction manager at one time,
+ * there is a field for the time it was taken at,
+ * a field for the variables waited on the most, hottest first,
+ * a field for the transactions which made others wait the most, worst first,
+ * and a field for the lock waits at every site, by site ID.
+ */
+
+public class LockContentionReport {
+
+    private final int time;
+    private final List<LockContention> hotVariables;
+    private final List<LockContention> topBlockers;
+    private final List<LockContention> sites;
+
+    public LockContentionReport(int time, List<LockContention> hotVariables, List<LockContention> topBlockers,
+                                List<LockContention> sites) {
+        this.time = time;
+        this.hotVariables = Collections.unmodifiableList(new ArrayList<>(hotVariables));
+        this.topBlockers = Collections.unmodifiableList(new ArrayList<>(topBlockers));
+        this.sites = Collections.unmodifiableList(new ArrayList<>(sites));
+    }
+
+    public int getTime() {
+        return time;
+    }
+
+    public List<LockContention> getHotVariables() {
+        return hotVariables;
+    }
+
+    public List<LockContention> getTopBlockers() {
+        return topBlockers;
+    }
+
+    public List<LockContention> getSites() {
+        return sites;
+    }
+
+
+    /**
+     *  Write one line per hot variable, blocking transaction and site, like "variable x3 waits=.. waitTime=.. upgradeConflicts=.."
+     */
+    public void writeTo(Appendable out) throws IOException {
+        out.append("lock contention at time ").append(String.valueOf(time)).append('\n');
+        for (LockContention variable : hotVariables) {
+            out.append("variable x").append(String.valueOf(variable.getID())).append(' ').append(variable.toString()).append('\n');
+        }
+        for (LockContention blocker : topBlockers) {
+            out.append("blocker T").append(String.valueOf(blocker.getID())).append(' ').append(blocker.toString()).append('\n');
+        }
+        for (LockContention site : sites) {
+            out.append("site ").append(String.valueOf(site.getID())).append(' ').append(site.toString()).append('\n');
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        try {
+            writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+}
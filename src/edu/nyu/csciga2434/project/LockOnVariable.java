@@ -12,7 +12,7 @@ public class LockOnVariable {
 
     private final int transactionID;
     private final int variableID;
-    private TypeOfLock lockType;
+    private volatile TypeOfLock lockType;
 
     public LockOnVariable(int transactionID, int variableID, TypeOfLock lockType){
         this.transactionID = transactionID;
@@ -7,18 +7,26 @@ import java.util.*;
  * Date: 10/31/16
  * Time: 2:00 PM
  *
+ * Every lock is indexed twice,
+ * once by the variable it is on and once by the transaction holding it,
+ * so that checking, acquiring, upgrading and releasing a lock never scans the whole table.
+ * A transaction holds at most one lock on a variable in one lock table.
+ *
+ * The table belongs to one site and is used by one thread at a time: the thread running the ticks,
+ * or the site worker doing this site's part of a commit or abort while the tick thread waits for it.
+ * Lists and sets returned are copies, so the caller may change the table while going through them.
  */
 
 public class LockTable {
 
-    private List<LockOnVariable> lockTable;
+    // variable ID -> locks on that variable in the order they were granted
+    private final Map<Integer, List<LockOnVariable>> locksByVariable;
+    // transaction ID -> (variable ID -> lock) in the order they were granted, transactions in the order they got their first lock
+    private final Map<Integer, Map<Integer, LockOnVariable>> locksByTransaction;
 
     public LockTable(){
-        lockTable = new ArrayList<>();
-    }
-
-    public List<LockOnVariable> getLockTable() {
-        return this.lockTable;
+        locksByVariable = new HashMap<>();
+        locksByTransaction = new LinkedHashMap<>();
     }
 
 
@@ -26,49 +34,81 @@ public class LockTable {
      * Judge if transaction has this type of lock on this variable by checking the lock table
      */
     public boolean ifTransactionHasLockOnVariableInThisTable(int variableID, int transactionID, TypeOfLock type) {
-        for (LockOnVariable lockTemp : this.lockTable) {
-            if (lockTemp.getVariableID() == variableID
-                    && lockTemp.getTransactionID() == transactionID
-                    && lockTemp.getLockType() == type) {
+        LockOnVariable lock = getLockOfTransactionOnVariable(variableID, transactionID);
+        return lock != null && lock.getLockType() == type;
+    }
+
+
+    /**
+     * Get the lock held by this transaction on requested variable, null if there is none
+     */
+    public LockOnVariable getLockOfTransactionOnVariable(int variableID, int transactionID) {
+        Map<Integer, LockOnVariable> locks = locksByTransaction.get(transactionID);
+        if (locks == null) {
+            return null;
+        }
+        return locks.get(variableID);
+    }
+
+
+    /**
+     * Judge if any transaction holds a write lock on requested variable
+     */
+    public boolean ifVariableWriteLocked(int variableID) {
+        List<LockOnVariable> locks = locksByVariable.get(variableID);
+        if (locks == null) {
+            return false;
+        }
+        for (LockOnVariable lock : locks) {
+            if (lock.getLockType() == TypeOfLock.Write) {
                 return true;
             }
         }
         return false;
     }
 
-//    public boolean ifCanHaveReadLockOnVariable(int variableID, int transactionID) {
-//        List<LockOnVariable> locks = getAllLocksOnVariable(variableID);
-//        if (locks.size() == 0) {
-//            return true;
-//        }
-//        boolean hasWriteLock = false;
-//        for (LockOnVariable lockTemp : locks) {
-//            if (lockTemp.getLockType() == TypeOfLock.Write && lockTemp.getTransactionID() != transactionID) {
-//                //Other transaction has a write lock on that variable,
-//                // which means that this transaction could not require read lock on that variable.
-//                hasWriteLock = true;
-//            }
-//        }
-//
-//        if (hasWriteLock) {
-//            return false;
-//        } else {
-//            return true;
-//        }
-//    }
-
 
     /**
      * Get the all the locks on requested variable
      */
     public List<LockOnVariable> getAllLocksOnVariable(int variableID) {
-        List<LockOnVariable> result = new ArrayList<>();
-        for (LockOnVariable lock : this.lockTable) {
-            if (lock.getVariableID() == variableID) {
-                result.add(lock);
-            }
+        List<LockOnVariable> locks = locksByVariable.get(variableID);
+        if (locks == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(locks);
+    }
+
+
+    /**
+     * Get all the locks held by this transaction in the order they were granted
+     */
+    public Collection<LockOnVariable> getLocksHeldByTransaction(int transactionID) {
+        Map<Integer, LockOnVariable> locks = locksByTransaction.get(transactionID);
+        if (locks == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(locks.values());
+    }
+
+
+    /**
+     * Get the number of locks in this table
+     */
+    public int getLockCount() {
+        int count = 0;
+        for (Map<Integer, LockOnVariable> locks : locksByTransaction.values()) {
+            count += locks.size();
         }
-        return result;
+        return count;
+    }
+
+
+    /**
+     * Get all the transactions holding any lock in this table in the order they got their first lock
+     */
+    public Set<Integer> getTransactionsHoldingLocks() {
+        return new LinkedHashSet<>(locksByTransaction.keySet());
     }
 
 
@@ -77,21 +117,16 @@ public class LockTable {
      */
     public void addLock(int variableID, int transactionID, TypeOfLock lockType) {
         LockOnVariable tempLock = new LockOnVariable(transactionID, variableID, lockType);
-        //System.out.println(tempLock.getLockType() +"+"+ tempLock.getTransactionID()+"+"+tempLock.getVariableID());
-        this.lockTable.add(tempLock);
+        locksByVariable.computeIfAbsent(variableID, k -> new ArrayList<>()).add(tempLock);
+        locksByTransaction.computeIfAbsent(transactionID, k -> new LinkedHashMap<>()).put(variableID, tempLock);
     }
 
 
     /**
-     * Return true if this transaction has a write lock on that variable
+     * Return true if this transaction has any lock in this lock table
      */
     public boolean ifThisTransactionHasWriteLockInThisLockTable(int transactionID) {
-        for (LockOnVariable lock : this.lockTable) {
-            if (lock.getTransactionID() == transactionID) {
-                return true;
-            }
-        }
-        return false;
+        return locksByTransaction.containsKey(transactionID);
     }
 
 
@@ -99,8 +134,10 @@ public class LockTable {
      * Upgrade the read lock on that variable to write one
      */
     public void updateReadLockToWriteLock(int variableID, int transactionID) {
-        LockOnVariable lock = getAllLocksOnVariable(variableID).get(0);
-        lock.setLockType(TypeOfLock.Write);
+        LockOnVariable lock = getLockOfTransactionOnVariable(variableID, transactionID);
+        if (lock != null) {
+            lock.setLockType(TypeOfLock.Write);
+        }
     }
 
 
@@ -108,21 +145,50 @@ public class LockTable {
      * Delete a lock in this lockable
      */
     public void deleteThisLock(LockOnVariable lock) {
-        int index = Integer.MIN_VALUE;
-        for (int i = 0; i < lockTable.size(); i++) {
-            LockOnVariable thisLock = lockTable.get(i);
-            if (thisLock.getVariableID() == lock.getVariableID()
-                    && thisLock.getTransactionID() == lock.getTransactionID()
-                    && thisLock.getLockType() == lock.getLockType()) {
-                index = i;
-                String typeOfLock = (lock.getLockType() == TypeOfLock.Read) ? "READ" : "WRITE";
-                System.out.println("[Success] The " + typeOfLock + " lock on variable x" + lock.getVariableID()
-                        + " held by Transaction T" + lock.getTransactionID() + " is removed.");
+        LockOnVariable thisLock = getLockOfTransactionOnVariable(lock.getVariableID(), lock.getTransactionID());
+        if (thisLock == null || thisLock.getLockType() != lock.getLockType()) {
+            return;
+        }
+        Map<Integer, LockOnVariable> locksOfTransaction = locksByTransaction.get(thisLock.getTransactionID());
+        locksOfTransaction.remove(thisLock.getVariableID());
+        if (locksOfTransaction.isEmpty()) {
+            locksByTransaction.remove(thisLock.getTransactionID());
+        }
+        removeFromVariableIndex(thisLock);
+    }
+
+
+    /**
+     * Release all the locks held by this transaction and return them in the order they were granted
+     */
+    public Collection<LockOnVariable> releaseAllLocksOfTransaction(int transactionID) {
+        Map<Integer, LockOnVariable> locks = locksByTransaction.remove(transactionID);
+        if (locks == null) {
+            return Collections.emptyList();
+        }
+        for (LockOnVariable lock : locks.values()) {
+            removeFromVariableIndex(lock);
+        }
+        return locks.values();
+    }
+
+
+    /**
+     * Remove the lock from the per-variable index, dropping the entry once no lock is left on that variable
+     */
+    private void removeFromVariableIndex(LockOnVariable lock) {
+        List<LockOnVariable> locksOnVariable = locksByVariable.get(lock.getVariableID());
+        if (locksOnVariable == null) {
+            return;
+        }
+        for (int i = 0; i < locksOnVariable.size(); i++) {
+            if (locksOnVariable.get(i) == lock) {
+                locksOnVariable.remove(i);
                 break;
             }
         }
-        if (index >= 0) {
-            lockTable.remove(index);
+        if (locksOnVariable.isEmpty()) {
+            locksByVariable.remove(lock.getVariableID());
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,92 @@
+package edu.nyu.csciga2434.project;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The metrics of a transaction manager at one time,
+ * there is a field for the time it was taken at,
+ * a field for the counters by name,
+ * a field for the gauges by name,
+ * and a field for the latency histograms by name, all latencies in ticks.
+ * It is a copy, so it does not change as the transaction manager goes on.
+ */
+
+public class MetricsSnapshot {
+
+    private final int time;
+    private final Map<String, Long> counters;
+    private final Map<String, Long> gauges;
+    private final Map<String, LatencyHistogram> histograms;
+
+    public MetricsSnapshot(int time, Map<String, Long> counters, Map<String, Long> gauges,
+                           Map<String, LatencyHistogram> histograms) {
+        this.time = time;
+        this.counters = Collections.unmodifiableMap(new LinkedHashMap<>(counters));
+        this.gauges = Collections.unmodifiableMap(new LinkedHashMap<>(gauges));
+        this.histograms = Collections.unmodifiableMap(new LinkedHashMap<>(histograms));
+    }
+
+    public int getTime() {
+        return time;
+    }
+
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    public Map<String, Long> getGauges() {
+        return gauges;
+    }
+
+
+    /**
+     *  the histogram by name, which should not be recorded into
+     */
+    public Map<String, LatencyHistogram> getHistograms() {
+        return histograms;
+    }
+
+    public long getCounter(String name) {
+        return counters.getOrDefault(name, 0L);
+    }
+
+    public long getGauge(String name) {
+        return gauges.getOrDefault(name, 0L);
+    }
+
+    public LatencyHistogram getHistogram(String name) {
+        return histograms.get(name);
+    }
+
+
+    /**
+     *  Write one line per metric, "counter name value", "gauge name value" or "histogram name count=.. min=.. ..."
+     */
+    public void writeTo(Appendable out) throws IOException {
+        out.append("metrics at time ").append(String.valueOf(time)).append('\n');
+        for (Map.Entry<String, Long> entry : counters.entrySet()) {
+            out.append("counter ").append(entry.getKey()).append(' ').append(String.valueOf(entry.getValue())).append('\n');
+        }
+        for (Map.Entry<String, Long> entry : gauges.entrySet()) {
+            out.append("gauge ").append(entry.getKey()).append(' ').append(String.valueOf(entry.getValue())).append('\n');
+        }
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            out.append("histogram ").append(entry.getKey()).append(' ').append(entry.getValue().toString()).append('\n');
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        try {
+            writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+}
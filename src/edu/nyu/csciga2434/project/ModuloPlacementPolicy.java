@@ -0,0 +1,19 @@
+package edu.nyu.csciga2434.project;
+
+/**
+ * The placement of the course project.
+ * Odd indexed variables are at one site each(i.e. 1 + index # mod number of sites).
+ * Even indexed variables are replicated on replicationFactor sites, starting from the same site and wrapping around,
+ * so they are at all sites when the replication factor is no less than the number of sites.
+ */
+public class ModuloPlacementPolicy implements PlacementPolicy {
+
+    @Override
+    public int[] getReplicaSites(int variableID, int siteTotalNumber, int variableTotalNumber, int replicationFactor) {
+        int firstSite = 1 + variableID % siteTotalNumber;
+        if (variableID % 2 != 0) {
+            return new int[] {firstSite};
+        }
+        return PlacementPolicy.consecutiveSites(firstSite, siteTotalNumber, replicationFactor);
+    }
+}
@@ -0,0 +1,23 @@
+package edu.nyu.csciga2434.project;
+
+/**
+ * The default listener, which drops every event
+ */
+public class NoOpEventListener implements EngineEventListener {
+
+    @Override
+    public void onCommand(CharSequence command) {
+    }
+
+    @Override
+    public void onEvent(EventType type, int transactionID, int variableID, int siteID, int value, int time, int otherTransactionID) {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,172 @@
+package edu.nyu.csciga2434.project;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads an op-log written by an OpLogWriter and runs it on a transaction manager,
+ * the same commands in the same ticks on one thread, so it gives the same result every time
+ * and runs as fast as the engine can take the commands.
+ * The commands are echoed to the listener of the manager in the text grammar.
+ * A batch is run again as a batch, so its write locks are taken up front in the same order as when it was recorded.
+ */
+public class OpLogReader {
+
+    private static final TypeOfCommand[] COMMAND_TYPES = TypeOfCommand.values();
+
+    private final File file;
+    private final StringBuilder text = new StringBuilder(32);
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private boolean endOfFile;
+
+    public OpLogReader(File file) {
+        this.file = file;
+    }
+
+
+    /**
+     *  Run every tick of the op-log on this manager, return the number of ticks run.
+     *  Commands after the last end of a tick belong to a tick which was never closed, they are run in a tick closed at the end.
+     */
+    public long replay(TransactionManager manager) throws IOException {
+        long tickNumber = 0;
+        boolean tickOpen = false;
+        try (FileChannel opened = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            this.channel = opened;
+            this.buffer = ByteBuffer.allocate(OpLogWriter.RECORD_SIZE * 80000);
+            this.buffer.flip();
+            this.endOfFile = false;
+            if (!fill(8) || buffer.getInt() != OpLogWriter.MAGIC || buffer.getInt() != OpLogWriter.RECORD_SIZE) {
+                throw new IOException("The op-log " + file + " is damaged or of another version.");
+            }
+            while (fill(OpLogWriter.RECORD_SIZE)) {
+                int kind = buffer.get() & 0xff;
+                int first = buffer.getInt();
+                int second = buffer.getInt();
+                int third = buffer.getInt();
+                if (!tickOpen) {
+                    manager.openTick();
+                    tickOpen = true;
+                }
+                if (kind == OpLogWriter.TICK_END_MARK) {
+                    tickOpen = false;
+                    manager.closeTick();
+                    tickNumber++;
+                } else if (kind == OpLogWriter.BATCH_MARK) {
+                    manager.submitBatch(first, readBatch(second));
+                } else {
+                    TypeOfCommand type = commandType(kind);
+                    text.setLength(0);
+                    appendCommandText(text, type, first, second, third);
+                    manager.runCommand(type, first, second, third, text);
+                }
+            }
+            if (tickOpen) {
+                tickOpen = false;
+                manager.closeTick();
+                tickNumber++;
+            }
+        } finally {
+            // a command failing in the engine does not leave its tick open
+            if (tickOpen) {
+                manager.closeTick();
+            }
+            this.channel = null;
+            this.buffer = null;
+        }
+        return tickNumber;
+    }
+
+
+    /**
+     *  read the reads and writes of a batch, recorded right after its mark in the order they were run
+     */
+    private OperationBatch readBatch(int operationCount) throws IOException {
+        OperationBatch batch = new OperationBatch();
+        for (int i = 0; i < operationCount; i++) {
+            if (!fill(OpLogWriter.RECORD_SIZE)) {
+                throw new IOException("The op-log " + file + " ends in the middle of a batch.");
+            }
+            TypeOfCommand type = commandType(buffer.get() & 0xff);
+            buffer.getInt();
+            int variableID = buffer.getInt();
+            int value = buffer.getInt();
+            if (type == TypeOfCommand.Write) {
+                batch.addWrite(variableID, value);
+            } else if (type == TypeOfCommand.Read) {
+                batch.addRead(variableID);
+            } else {
+                throw new IOException("The op-log " + file + " has a " + type + " inside a batch.");
+            }
+        }
+        return batch;
+    }
+
+
+    /**
+     *  make sure at least this many bytes are in the buffer, return false if the file ends before
+     */
+    private boolean fill(int length) throws IOException {
+        while (buffer.remaining() < length) {
+            if (endOfFile) {
+                return false;
+            }
+            buffer.compact();
+            endOfFile = channel.read(buffer) < 0;
+            buffer.flip();
+        }
+        return true;
+    }
+
+    private TypeOfCommand commandType(int kind) throws IOException {
+        if (kind >= COMMAND_TYPES.length) {
+            throw new IOException("The op-log " + file + " has an unknown record kind " + kind + ".");
+        }
+        return COMMAND_TYPES[kind];
+    }
+
+
+    /**
+     *  the command in the text grammar, as readCommand takes it
+     */
+    private static void appendCommandText(StringBuilder out, TypeOfCommand type, int first, int second, int third) {
+        switch (type) {
+            case Begin:
+                out.append("begin(T").append(first).append(')');
+                break;
+            case BeginReadOnly:
+                out.append("beginRO(T").append(first).append(')');
+                break;
+            case Read:
+                out.append("R(T").append(first).append(",x").append(second).append(')');
+                break;
+            case Write:
+                out.append("W(T").append(first).append(",x").append(second).append(',').append(third).append(')');
+                break;
+            case End:
+                out.append("end(T").append(first).append(')');
+                break;
+            case Fail:
+                out.append("fail(").append(first).append(')');
+                break;
+            case Recover:
+                out.append("recover(").append(first).append(')');
+                break;
+            case Dump:
+                out.append("dump()");
+                break;
+            case DumpSite:
+                out.append("dump(").append(first).append(')');
+                break;
+            case DumpVariable:
+                out.append("dump(x").append(first).append(')');
+                break;
+            default:
+                break;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package edu.nyu.csciga2434.project;
+
+import java.io.*;
+
+/**
+ * Writes the commands run by a transaction manager to a binary op-log, which can be replayed into another one.
+ * The op-log starts with the magic number and the record size, both ints,
+ * then every record is 13 bytes: the ordinal of the TypeOfCommand in one byte followed by its three numbers,
+ * or the byte 0xFE and three zeros for the end of a tick.
+ * A batch is the byte 0xFD, the transaction ID, the number of its operations and a zero,
+ * followed by a record of each of its reads and writes in the order they were added to it,
+ * so it is run again as a batch and takes the same locks up front.
+ * An OpLogReader replays the op-log.
+ * Empty and unknown commands do nothing and are not recorded, only the tick they were in is.
+ */
+public class OpLogWriter {
+
+    public static final int RECORD_SIZE = 13;
+    static final int MAGIC = 0x4F504C47;
+    static final int TICK_END_MARK = 0xFE;
+    static final int BATCH_MARK = 0xFD;
+
+    private final DataOutputStream out;
+
+    public OpLogWriter(OutputStream out) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        try {
+            this.out.writeInt(MAGIC);
+            this.out.writeInt(RECORD_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    /**
+     *  record one command
+     */
+    public synchronized void write(TypeOfCommand type, int first, int second, int third) {
+        writeRecord(type.ordinal(), first, second, third);
+    }
+
+
+    /**
+     *  record a batch of one transaction
+     */
+    public synchronized void writeBatch(int transactionID, OperationBatch batch) {
+        writeRecord(BATCH_MARK, transactionID, batch.size(), 0);
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.getTypeOfOperation(i) == TypeOfOperation.OP_WRITE) {
+                writeRecord(TypeOfCommand.Write.ordinal(), transactionID, batch.getVariableID(i), batch.getValue(i));
+            } else {
+                writeRecord(TypeOfCommand.Read.ordinal(), transactionID, batch.getVariableID(i), 0);
+            }
+        }
+    }
+
+
+    /**
+     *  record the end of the tick the commands written since the last one belong to
+     */
+    public synchronized void endTick() {
+        writeRecord(TICK_END_MARK, 0, 0, 0);
+    }
+
+    public synchronized void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public synchronized void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeRecord(int kind, int first, int second, int third) {
+        try {
+            out.writeByte(kind);
+            out.writeInt(first);
+            out.writeInt(second);
+            out.writeInt(third);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
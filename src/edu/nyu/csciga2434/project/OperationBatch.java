@@ -0,0 +1,82 @@
+package edu.nyu.csciga2434.project;
+
+import java.util.Arrays;
+
+/**
+ * Reads and writes of one transaction submitted together through the client API.
+ * Inside the batch,
+ * there is
+ * a field for the variable of every operation,
+ * a field for the value of every write(0 for a read),
+ * a field for whether every operation is a write, all in the order they were added.
+ */
+public class OperationBatch {
+
+    private int[] variableIDs;
+    private int[] values;
+    private boolean[] writes;
+    private int size;
+
+    public OperationBatch() {
+        this.variableIDs = new int[8];
+        this.values = new int[8];
+        this.writes = new boolean[8];
+        this.size = 0;
+    }
+
+    public OperationBatch addRead(int variableID) {
+        add(variableID, 0, false);
+        return this;
+    }
+
+    public OperationBatch addWrite(int variableID, int value) {
+        add(variableID, value, true);
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getVariableID(int index) {
+        return variableIDs[index];
+    }
+
+    public int getValue(int index) {
+        return values[index];
+    }
+
+    public TypeOfOperation getTypeOfOperation(int index) {
+        return writes[index] ? TypeOfOperation.OP_WRITE : TypeOfOperation.OP_READ;
+    }
+
+
+    /**
+     *  return the indexes of the operations sorted by variable,
+     *  operations on the same variable keep the order they were added in
+     */
+    public int[] getOrderByVariable() {
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = ((long) variableIDs[i] << 32) | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    private void add(int variableID, int value, boolean write) {
+        if (size == variableIDs.length) {
+            variableIDs = Arrays.copyOf(variableIDs, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+            writes = Arrays.copyOf(writes, size * 2);
+        }
+        variableIDs[size] = variableID;
+        values[size] = value;
+        writes[size] = write;
+        size++;
+    }
+}
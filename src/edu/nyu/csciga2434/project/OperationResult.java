@@ -0,0 +1,38 @@
+package edu.nyu.csciga2434.project;
+
+/**
+ * What the client API gives back for one operation.
+ * Inside each result,
+ * there is
+ * a field for how the operation ended,
+ * a field for the value read or written(0 for other operations),
+ * a field for the time the operation ended.
+ */
+public class OperationResult {
+    private final TypeOfResult resultType;
+    private final int value;
+    private final int time;
+
+    public OperationResult(TypeOfResult resultType, int value, int time) {
+        this.resultType = resultType;
+        this.value = value;
+        this.time = time;
+    }
+
+    public TypeOfResult getResultType() {
+        return resultType;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    public int getTime() {
+        return time;
+    }
+
+    @Override
+    public String toString() {
+        return resultType + "(value " + value + " at time " + time + ")";
+    }
+}
@@ -0,0 +1,28 @@
+package edu.nyu.csciga2434.project;
+
+import java.util.Arrays;
+
+/**
+ * Used for deciding which sites hold a copy of a variable.
+ * The policy is asked once per variable when the transaction manager starts,
+ * and the answer is kept in a replica map, so it does not have to be fast.
+ * The returned site IDs are numbered from 1 to siteTotalNumber, sorted ascending and without duplicates.
+ */
+public interface PlacementPolicy {
+
+    int[] getReplicaSites(int variableID, int siteTotalNumber, int variableTotalNumber, int replicationFactor);
+
+
+    /**
+     *  return replicationFactor consecutive site IDs starting from firstSite and wrapping around, sorted ascending
+     */
+    static int[] consecutiveSites(int firstSite, int siteTotalNumber, int replicationFactor) {
+        int copies = Math.min(replicationFactor, siteTotalNumber);
+        int[] result = new int[copies];
+        for (int i = 0; i < copies; i++) {
+            result[i] = 1 + (firstSite - 1 + i) % siteTotalNumber;
+        }
+        Arrays.sort(result);
+        return result;
+    }
+}
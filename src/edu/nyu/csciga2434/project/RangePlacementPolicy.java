@@ -0,0 +1,14 @@
+package edu.nyu.csciga2434.project;
+
+/**
+ * Splits the variables into contiguous ranges of about the same size, one range per site.
+ * Every variable is then copied to the following replicationFactor - 1 sites, wrapping around.
+ */
+public class RangePlacementPolicy implements PlacementPolicy {
+
+    @Override
+    public int[] getReplicaSites(int variableID, int siteTotalNumber, int variableTotalNumber, int replicationFactor) {
+        int firstSite = 1 + (int) ((long) (variableID - 1) * siteTotalNumber / variableTotalNumber);
+        return PlacementPolicy.consecutiveSites(firstSite, siteTotalNumber, replicationFactor);
+    }
+}
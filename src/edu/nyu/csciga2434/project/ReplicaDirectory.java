@@ -0,0 +1,129 @@
+package edu.nyu.csciga2434.project;
+
+/**
+ * Kept inside the transaction manager so that a read or a write only touches the sites holding the variable.
+ * Inside the directory,
+ * there is
+ * a map from every variable to the sites holding a copy of it(sorted ascending),
+ * a map from every site to the variables it holds,
+ * a field for the up/down state of every site,
+ * a count of the up copies of every variable, maintained when a site fails or recovers.
+ */
+public class ReplicaDirectory {
+
+    private final int[][] replicaSitesOfVariable;
+    private final int[][] variablesOfSite;
+    private final boolean[] ifSiteUp;
+    private final int[] upReplicaCount;
+
+    public ReplicaDirectory(ClusterConfiguration configuration) {
+        int siteTotalNumber = configuration.getSiteTotalNumber();
+        int variableTotalNumber = configuration.getVariableTotalNumber();
+        PlacementPolicy policy = configuration.getPlacementPolicy();
+
+        this.replicaSitesOfVariable = new int[variableTotalNumber + 1][];
+        this.upReplicaCount = new int[variableTotalNumber + 1];
+        int[] variableCountOfSite = new int[siteTotalNumber + 1];
+        for (int variableID = 1; variableID <= variableTotalNumber; variableID++) {
+            int[] replicaSites = policy.getReplicaSites(variableID, siteTotalNumber, variableTotalNumber, configuration.getReplicationFactor());
+            if (replicaSites.length == 0) {
+                throw new IllegalArgumentException("Variable x" + variableID + " is not placed on any site.");
+            }
+            for (int siteID : replicaSites) {
+                if (siteID < 1 || siteID > siteTotalNumber) {
+                    throw new IllegalArgumentException("Variable x" + variableID + " is placed on Site " + siteID + " which does not exist.");
+                }
+                variableCountOfSite[siteID]++;
+            }
+            replicaSitesOfVariable[variableID] = replicaSites;
+            upReplicaCount[variableID] = replicaSites.length;
+        }
+
+        // invert the map, variables of a site are sorted ascending since they are visited in order
+        this.variablesOfSite = new int[siteTotalNumber + 1][];
+        for (int siteID = 1; siteID <= siteTotalNumber; siteID++) {
+            variablesOfSite[siteID] = new int[variableCountOfSite[siteID]];
+        }
+        int[] filled = new int[siteTotalNumber + 1];
+        for (int variableID = 1; variableID <= variableTotalNumber; variableID++) {
+            for (int siteID : replicaSitesOfVariable[variableID]) {
+                variablesOfSite[siteID][filled[siteID]++] = variableID;
+            }
+        }
+
+        this.ifSiteUp = new boolean[siteTotalNumber + 1];
+        for (int siteID = 1; siteID <= siteTotalNumber; siteID++) {
+            ifSiteUp[siteID] = true;
+        }
+    }
+
+
+    /**
+     *  return the sites holding a copy of this variable, sorted ascending
+     */
+    public int[] getReplicaSites(int variableID) {
+        return replicaSitesOfVariable[variableID];
+    }
+
+
+    /**
+     *  return the variables held by this site, sorted ascending
+     */
+    public int[] getVariablesOfSite(int siteID) {
+        return variablesOfSite[siteID];
+    }
+
+
+    /**
+     *  return true if this variable is replicated on more than one site
+     */
+    public boolean ifReplicated(int variableID) {
+        return replicaSitesOfVariable[variableID].length > 1;
+    }
+
+
+    public boolean ifSiteUp(int siteID) {
+        return ifSiteUp[siteID];
+    }
+
+
+    /**
+     *  return true if at least one site holding this variable is up
+     */
+    public boolean ifAnyReplicaUp(int variableID) {
+        return upReplicaCount[variableID] > 0;
+    }
+
+
+    public int getUpReplicaCount(int variableID) {
+        return upReplicaCount[variableID];
+    }
+
+
+    /**
+     *  called when a site fails, only the variables held by that site are updated
+     */
+    public void markSiteDown(int siteID) {
+        if (!ifSiteUp[siteID]) {
+            return;
+        }
+        ifSiteUp[siteID] = false;
+        for (int variableID : variablesOfSite[siteID]) {
+            upReplicaCount[variableID]--;
+        }
+    }
+
+
+    /**
+     *  called when a site recovers, only the variables held by that site are updated
+     */
+    public void markSiteUp(int siteID) {
+        if (ifSiteUp[siteID]) {
+            return;
+        }
+        ifSiteUp[siteID] = true;
+        for (int variableID : variablesOfSite[siteID]) {
+            upReplicaCount[variableID]++;
+        }
+    }
+}
@@ -7,19 +7,33 @@ import java.util.*;
  * Date: 10/31/16
  * Time: 3:14 PM
  *
- * There are total 10 sites, numbered 1 to 10.
- * Odd indexed variable are at one site each(i.e. 1+ index # mod 10). Even indexed variables are at all sites.
+ * Sites are numbered 1 to the number of sites in the cluster configuration.
+ * Which variables a site holds is decided by the placement policy, and the transaction manager hands them to the site.
+ * The copies of variables are kept in a variable store, so looking one up by its ID is O(1).
  * Every site has a lock table and when the site fails, the lock table is erased.
+ * With a write-ahead log, every committed write is also appended to the log of the site,
+ * and a site started again over the same log gets back its committed values by replaying it.
+ * Its failures and recoveries are logged as well, so it is started again down if it was down,
+ * and a replicated copy not written or caught up since the last recovery is still not readable.
+ * A checkpoint of the committed values and kept versions is taken every few ticks, after which the log is emptied,
+ * so starting only loads the latest checkpoint and replays the commits after it.
+ * A site is used by one thread at a time, the thread running the ticks or a site worker doing its part of a commit or abort,
+ * so nothing in it is locked and different sites never wait for each other.
  */
 
 public class Site {
 
-    private static final int DEFAULT_VARIABLE_TOTAL_NUMBER = 20;
-
     private final int id;
-    private List<Variable> variableList;
+    private VariableStore variableStore;
     private LockTable lockTableOfSite;
     private boolean ifSiteWorking;
+    // number of times this site has failed, so a write done before a failure can be told apart
+    private int failureCount;
+    private final EngineEventListener listener;
+    // null if the committed state is kept in memory only
+    private final WriteAheadLog log;
+    // null if no checkpoint is taken
+    private final SiteCheckpoint checkpoint;
 
     public int getSiteID () {
         return this.id;
@@ -29,54 +43,53 @@ public class Site {
         return ifSiteWorking;
     }
 
-    public List<Variable> getALLVariables() {
-        return this.variableList;
+    public int getFailureCount() {
+        return failureCount;
     }
 
     public LockTable getLockTableOfSite () {
         return this.lockTableOfSite;
     }
 
-    public List<Variable> getVariableList() {
-        return this.variableList;
-    }
-
-    public Site(int id){
+    public Site(int id, EngineEventListener listener, WriteAheadLog log, SiteCheckpoint checkpoint){
         this.id = id;
-        this.variableList = new ArrayList<>();
+        this.listener = listener;
+        this.log = log;
+        this.checkpoint = checkpoint;
+        this.variableStore = new VariableStore();
         this.lockTableOfSite = new LockTable();
-        BuildSite();
         this.ifSiteWorking = true;
     }
 
 
     /**
-     *  build this site, create replicated or non-replicated copy of a variable
+     *  create replicated or non-replicated copy of a variable in this site
+     *  called when the site is first set for all the variables that should be initially held by this site
      */
-    private void BuildSite(){
-        // call BuildSite() when the site is first set and include all the variables that should be initially held by this site.
-        for (int i = 1; i <= DEFAULT_VARIABLE_TOTAL_NUMBER; i++){
-            if(i % 2 == 0){
-                this.variableList.add(new Variable(i));
-            }else{
-                if(this.id == (1 + i % 10)) {
-                    this.variableList.add(new Variable(i));
-                }
-            }
-        }
+    public void hostVariable(int variableID, boolean replicated) {
+        this.variableStore.addVariable(variableID, replicated);
     }
 
 
     /**
-     *  output variable value in this site
+     *  report the committed values of all variables in this site
      */
-    public String dumpOutput() {
-        StringBuffer dumpOutput = new StringBuffer();
-        for (int i = 0; i < variableList.size(); i++) {
-            dumpOutput.append("x").append(variableList.get(i).getID()).append(" has value of ").append(
-                    variableList.get(i).getValue()).append(".\n");
+    public void dump() {
+        listener.onEvent(EventType.DumpSite, 0, 0, id, 0, 0, 0);
+        for (int slot = 0; slot < variableStore.size(); slot++) {
+            listener.onEvent(EventType.DumpValue, 0, variableStore.getVariableID(slot), id, variableStore.getValue(slot), 0, 0);
         }
-        return dumpOutput.toString();
+        listener.onEvent(EventType.DumpEnd, 0, 0, id, 0, 0, 0);
+    }
+
+
+    /**
+     *  report the committed value of one variable in this site
+     */
+    public void dumpVariable(int variableID) {
+        listener.onEvent(EventType.DumpSite, 0, 0, id, 0, 0, 0);
+        listener.onEvent(EventType.DumpValue, 0, variableID, id, returnThisVariableValue(variableID), 0, 0);
+        listener.onEvent(EventType.DumpEnd, 0, 0, id, 0, 0, 0);
     }
 
 
@@ -84,13 +97,7 @@ public class Site {
      *  return true if this site contains requested variable
      */
     public boolean ifContainsVariable(int variableID) {
-        List<Variable> list = this.getVariableList();
-        for (Variable var : list) {
-            if (var.getID() == variableID) {
-                return true;
-            }
-        }
-        return false;
+        return variableStore.getSlot(variableID) >= 0;
     }
 
 
@@ -98,28 +105,118 @@ public class Site {
      *  return true if requested variable is available for reading at this moment
      */
     public boolean ifThisVariableIsAvailable(int variableID) {
-        List<Variable> list = this.getVariableList();
-        for (Variable var : list) {
-            if (var.getID() == variableID && var.isAvailableForReading()) {
-                return true;
+        int slot = variableStore.getSlot(variableID);
+        return slot >= 0 && variableStore.isAvailableForReading(slot);
+    }
+
+
+    /**
+     *  return the commit time of the latest version of requested variable, -1 if this site does not hold it
+     */
+    public int getLatestCommitTime(int variableID) {
+        int slot = variableStore.getSlot(variableID);
+        if (slot < 0) {
+            return -1;
+        }
+        VersionChain chain = variableStore.getVersionChain(slot);
+        return chain.getTime(chain.getLatestPosition());
+    }
+
+
+    /**
+     *  return the versions of requested variable committed after this time, as commit time and value one after another
+     */
+    public int[] getVersionsCommittedAfter(int variableID, int time) {
+        int slot = variableStore.getSlot(variableID);
+        if (slot < 0) {
+            return new int[0];
+        }
+        VersionChain chain = variableStore.getVersionChain(slot);
+        int lastSeen = chain.findLatestBefore(time + 1);
+        int first = lastSeen == -1 ? chain.getOldestPosition() : lastSeen + 1;
+        int[] versions = new int[(chain.getLatestPosition() + 1 - first) * 2];
+        for (int position = first, i = 0; position <= chain.getLatestPosition(); position++) {
+            versions[i++] = chain.getTime(position);
+            versions[i++] = chain.getValue(position);
+        }
+        return versions;
+    }
+
+
+    /**
+     *  Bring a copy which is not readable since this site recovered up to date with versions copied from an up replica,
+     *  and make it readable again. Return false if nothing is done since the copy is readable already.
+     */
+    public boolean catchUpVariable(int variableID, int[] versions, int catchUpTime) {
+        int slot = variableStore.getSlot(variableID);
+        if (slot < 0 || variableStore.isAvailableForReading(slot) || versions.length == 0) {
+            return false;
+        }
+        VersionChain chain = variableStore.getVersionChain(slot);
+        int latestTime = chain.getTime(chain.getLatestPosition());
+        for (int i = 0; i < versions.length; i += 2) {
+            if (versions[i] > latestTime) {
+                chain.append(versions[i + 1], versions[i]);
             }
         }
-        return false;
+        int value = versions[versions.length - 1];
+        variableStore.setValue(slot, value);
+        variableStore.setCurrValue(slot, value);
+        variableStore.setAvailableForReading(slot, true);
+        if (log != null) {
+            // logged at the time of the catch-up, so it is never older than the latest checkpoint
+            log.append(variableID, value, catchUpTime);
+        }
+        listener.onEvent(EventType.VariableCaughtUp, 0, variableID, id, value, catchUpTime, 0);
+        return true;
+    }
+
+
+    /**
+     *  binary search the committed value history of requested variable for the latest version committed before snapshotTime,
+     *  null if there is no such version or this site does not hold the variable
+     */
+    public Integer readSnapshotValue(int variableID, int snapshotTime) {
+        int slot = variableStore.getSlot(variableID);
+        if (slot < 0) {
+            return null;
+        }
+        VersionChain chain = variableStore.getVersionChain(slot);
+        int position = chain.findLatestBefore(snapshotTime);
+        if (position == -1) {
+            return null;
+        }
+        return chain.getValue(position);
     }
 
 
     /**
      *  write value to variable's uncommitted value field
      */
-    public void writeToVariableCurrValueInThisSite(int variableID, int value) {
-        List<Variable> list = this.getALLVariables();
-        for (Variable var : list) {
-            if (var.getID() == variableID) {
-                var.setAvailableForReading(true);
-                var.setCurrValue(value);
-                System.out.println("[Success] Variable x" + variableID + " at Site " + this.id + " has temporary uncommitted value: " + var.getCurrValue() + ".");
-                return;
-            }
+    public void writeToVariableCurrValueInThisSite(int transactionID, int variableID, int value) {
+        int slot = variableStore.getSlot(variableID);
+        if (slot < 0) {
+            return;
+        }
+        variableStore.setAvailableForReading(slot, true);
+        variableStore.setCurrValue(slot, value);
+        listener.onEvent(EventType.UncommittedWrite, transactionID, variableID, id, variableStore.getCurrValue(slot), 0, 0);
+    }
+
+
+    /**
+     *  Put back the copy of a variable as it was before an aborted write.
+     *  If the site has failed since the write, the write is already gone with the failure, and the copy may have
+     *  been written again after the recovery, so it is left as it is.
+     */
+    public void undoWrite(int variableID, int beforeValue, boolean wasReadable, int failureCountAtWrite) {
+        int slot = variableStore.getSlot(variableID);
+        if (slot < 0) {
+            return;
+        }
+        if (failureCount == failureCountAtWrite) {
+            variableStore.setCurrValue(slot, beforeValue);
+            variableStore.setAvailableForReading(slot, wasReadable);
         }
     }
 
@@ -128,13 +225,11 @@ public class Site {
      *  return this variable's current uncommitted value
      */
     public int returnThisVariableCurrentValue(int variableID) {
-        int result = 0;
-        for(Variable var : this.variableList) {
-            if (var.getID() == variableID) {
-                return var.getCurrValue();
-            }
+        int slot = variableStore.getSlot(variableID);
+        if (slot < 0) {
+            return 0;
         }
-        return result;
+        return variableStore.getCurrValue(slot);
     }
 
 
@@ -142,50 +237,156 @@ public class Site {
      *  return this variable's latest committed value
      */
     public int returnThisVariableValue(int variableID) {
-        int result = 0;
-        for(Variable var : this.variableList) {
-            if (var.getID() == variableID) {
-                return var.getValue();
-            }
+        int slot = variableStore.getSlot(variableID);
+        if (slot < 0) {
+            return 0;
         }
-        return result;
+        return variableStore.getValue(slot);
     }
 
 
     /**
-     *  release the specific lock
+     *  have uncommitted values of the variables written by this transaction committed, all in one go.
+     *  Versions which no snapshot starting at or after snapshotHorizon can read are dropped at the same time.
      */
-    public void releaseThatLock(LockOnVariable lock) {
-        lockTableOfSite.deleteThisLock(lock);
+    public void commitWrites(int transactionID, int[] variableIDs, int commitTime, int snapshotHorizon) {
+        for (int variableID : variableIDs) {
+            commitTheWrite(transactionID, variableID, commitTime, snapshotHorizon);
+        }
+    }
+
+    private void commitTheWrite(int transactionID, int tempVariableID, int commitTime, int snapshotHorizon) {
+        int slot = variableStore.getSlot(tempVariableID);
+        if (slot < 0) {
+            listener.onEvent(EventType.CommitVariableMissing, transactionID, tempVariableID, id, 0, commitTime, 0);
+            return;
+        }
+        int valueNew = variableStore.getCurrValue(slot);
+        variableStore.setValue(slot, valueNew);
+        listener.onEvent(EventType.VariableCommitted, transactionID, tempVariableID, id, valueNew, commitTime, 0);
+        VersionChain chain = variableStore.getVersionChain(slot);
+        chain.append(valueNew, commitTime);
+        chain.prune(snapshotHorizon);
+        if (log != null) {
+            log.append(tempVariableID, valueNew, commitTime);
+        }
     }
 
 
     /**
-     *  have uncommitted value committed
+     *  Load the latest checkpoint and replay the write-ahead log after it to get back the committed values,
+     *  whether the site is up and which copies can be read, called once when the site is started.
+     *  A logged commit or catch-up makes its copy readable, as the write did before the restart.
+     *  Return the latest time found, 0 if there is none.
      */
-    public void CommitTheWrite(LockOnVariable lock, int commitTime) {
-        if ( !ifContainsVariable(lock.getVariableID())) {
-            System.out.println("[Failure] Cannot find this variable x" + lock.getVariableID() + " in this site " + id + ".");
-            return;
+    public int replayLog() {
+        if (log == null) {
+            return 0;
+        }
+        int checkpointTime = 0;
+        if (checkpoint != null) {
+            checkpointTime = checkpoint.load(variableStore);
+            this.ifSiteWorking = checkpoint.getIfSiteWorkingAtLoad();
         }
-        int tempVariableID = lock.getVariableID();
-        for (Variable var : variableList) {
-            if (var.getID() == tempVariableID) {
-                int valueNew = var.getCurrValue();
-                var.setValue(valueNew);
-                System.out.println("Now this variable to be updated is x" + tempVariableID + " at Site" + this.id + " with new value " + var.getValue() + " at time " + commitTime + ".");
-                var.getVariableHistoryList().add(new VariableHistory(valueNew, commitTime));
-                return;
+        int[] records = log.readAll();
+        int latestTime = checkpointTime;
+        for (int i = 0; i < records.length; i += 3) {
+            int value = records[i + 1];
+            int commitTime = records[i + 2];
+            if (commitTime <= checkpointTime) {
+                // the log was not emptied after the checkpoint holding this record
+                continue;
             }
+            latestTime = Math.max(latestTime, commitTime);
+            if (records[i] == WriteAheadLog.SITE_FAILED) {
+                this.ifSiteWorking = false;
+                continue;
+            }
+            if (records[i] == WriteAheadLog.SITE_RECOVERED) {
+                this.ifSiteWorking = true;
+                this.variableStore.setOnlyNonReplicatedAvailableForReading();
+                continue;
+            }
+            int slot = variableStore.getSlot(records[i]);
+            if (slot < 0) {
+                // the variable is not placed at this site any more
+                continue;
+            }
+            variableStore.setValue(slot, value);
+            variableStore.setCurrValue(slot, value);
+            variableStore.setAvailableForReading(slot, true);
+            VersionChain chain = variableStore.getVersionChain(slot);
+            chain.append(value, commitTime);
+            // no snapshot is active while starting, so only the latest version is needed
+            chain.prune(commitTime + 1);
         }
+        return latestTime;
     }
 
 
     /**
-     *  fail this site
+     *  force the committed writes appended since the last call to disk
+     */
+    public void syncLog() {
+        if (log != null) {
+            log.sync();
+        }
+    }
+
+    /**
+     *  Take a checkpoint of the committed state at this time and empty the log,
+     *  called at the end of a tick after the log is synced
      */
-    public void failThisSite() {
+    public void takeCheckpoint(int checkpointTime) {
+        if (checkpoint == null) {
+            return;
+        }
+        checkpoint.write(checkpointTime, ifSiteWorking, variableStore);
+        log.truncate();
+    }
+
+
+    /**
+     *  the number of committed versions kept at this site, over all its variables
+     */
+    public long getVersionCount() {
+        long count = 0;
+        for (int slot = 0; slot < variableStore.size(); slot++) {
+            count += variableStore.getVersionChain(slot).size();
+        }
+        return count;
+    }
+
+
+    /**
+     *  the number of committed versions kept of the variable having the most of them at this site
+     */
+    public int getLongestVersionChain() {
+        int longest = 0;
+        for (int slot = 0; slot < variableStore.size(); slot++) {
+            longest = Math.max(longest, variableStore.getVersionChain(slot).size());
+        }
+        return longest;
+    }
+
+    public void closeLog() {
+        if (log != null) {
+            log.close();
+        }
+    }
+
+
+    /**
+     *  fail this site at this time
+     */
+    public void failThisSite(int failTime) {
         this.ifSiteWorking = false;
+        this.failureCount++;
+        if (log != null) {
+            log.appendSiteState(WriteAheadLog.SITE_FAILED, failTime);
+        }
+        // the uncommitted writes are lost with the failure
+        this.variableStore.discardUncommittedValues();
 
         // erase the lock table
         //System.out.println("Original size of lock table is " + this.lockTableOfSite.getLockTable().size());
@@ -196,21 +397,16 @@ public class Site {
 
 
     /**
-     *  recover this site
+     *  recover this site at this time
      */
-    public void recoverThisSite() {
-        System.out.println("[Recover] This site " + this.getSiteID() + " is recovered.");
+    public void recoverThisSite(int recoverTime) {
+        listener.onEvent(EventType.SiteRecovered, 0, 0, id, 0, 0, 0);
         this.ifSiteWorking = true;
+        if (log != null) {
+            log.appendSiteState(WriteAheadLog.SITE_RECOVERED, recoverTime);
+        }
         //Setting only non-replicated variables as available to read
         //Replicated variables should not be available to read
-        List<Variable> varList = this.getALLVariables();
-
-        for (Variable var : varList) {
-            if (var.hasCopy()) {
-                var.setAvailableForReading(false);
-            } else {
-                var.setAvailableForReading(true);
-            }
-        }
+        this.variableStore.setOnlyNonReplicatedAvailableForReading();
     }
-}
\ No newline at end of file
+}
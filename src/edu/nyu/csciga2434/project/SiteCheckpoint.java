@@ -0,0 +1,142 @@
+package edu.nyu.csciga2434.project;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * The checkpoint of the committed state of one site, read and written through a memory-mapped file.
+ * The layout is a header of magic number, checkpoint time, 1 if the site is up(0 if it is down) and number of variables,
+ * then for every variable its ID, committed value, 1 if the copy can be read(0 if not), number of versions
+ * and the commit time and value of each version, and at last the CRC32 of everything before it. All of them are ints.
+ * A new checkpoint is written to a temporary file which then replaces the old one at once,
+ * so a checkpoint on disk is always complete even if writing the next one is cut short.
+ */
+public class SiteCheckpoint {
+
+    private static final int MAGIC = 0x434B5054;
+    private static final int HEADER_SIZE = 16;
+
+    private final File file;
+    private final File temporaryFile;
+    // whether the site was up in the checkpoint last loaded
+    private boolean ifSiteWorkingAtLoad;
+
+    public SiteCheckpoint(File file) {
+        this.file = file;
+        this.temporaryFile = new File(file.getPath() + ".tmp");
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+
+    /**
+     *  return true if the site was up in the checkpoint last loaded, or if there was none
+     */
+    public boolean getIfSiteWorkingAtLoad() {
+        return ifSiteWorkingAtLoad;
+    }
+
+
+    /**
+     *  write whether the site is up, and the committed values, readability and kept versions of every variable in the store
+     *  as of this time
+     */
+    public void write(int checkpointTime, boolean siteWorking, VariableStore store) {
+        long size = HEADER_SIZE + 4;
+        for (int slot = 0; slot < store.size(); slot++) {
+            size += 16 + 8L * store.getVersionChain(slot).size();
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("The checkpoint " + file + " is too large to be mapped at once.");
+        }
+        try (FileChannel channel = FileChannel.open(temporaryFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC).putInt(checkpointTime).putInt(siteWorking ? 1 : 0).putInt(store.size());
+            for (int slot = 0; slot < store.size(); slot++) {
+                VersionChain chain = store.getVersionChain(slot);
+                buffer.putInt(store.getVariableID(slot)).putInt(store.getValue(slot))
+                        .putInt(store.isAvailableForReading(slot) ? 1 : 0).putInt(chain.size());
+                for (int position = chain.getOldestPosition(); position <= chain.getLatestPosition(); position++) {
+                    buffer.putInt(chain.getTime(position)).putInt(chain.getValue(position));
+                }
+            }
+            buffer.putInt(checksum(buffer, (int) size - 4));
+            buffer.force();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write the checkpoint " + temporaryFile + ".", e);
+        }
+        try {
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot replace the checkpoint " + file + ".", e);
+        }
+    }
+
+
+    /**
+     *  Load the checkpoint into the store, variables not placed at this site any more are skipped.
+     *  Return the checkpoint time, 0 if there is no checkpoint yet.
+     */
+    public int load(VariableStore store) {
+        this.ifSiteWorkingAtLoad = true;
+        if (!file.exists()) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + 4 || size > Integer.MAX_VALUE) {
+                throw new IllegalStateException("The checkpoint " + file + " has a wrong size " + size + ".");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC || buffer.getInt((int) size - 4) != checksum(buffer, (int) size - 4)) {
+                throw new IllegalStateException("The checkpoint " + file + " is damaged.");
+            }
+            int checkpointTime = buffer.getInt();
+            this.ifSiteWorkingAtLoad = buffer.getInt() == 1;
+            int variableCount = buffer.getInt();
+            for (int i = 0; i < variableCount; i++) {
+                int variableID = buffer.getInt();
+                int value = buffer.getInt();
+                boolean readable = buffer.getInt() == 1;
+                int versionCount = buffer.getInt();
+                int slot = store.getSlot(variableID);
+                if (slot < 0 || versionCount == 0) {
+                    buffer.position(buffer.position() + 8 * versionCount);
+                    continue;
+                }
+                int oldestTime = buffer.getInt();
+                VersionChain chain = new VersionChain(buffer.getInt(), oldestTime);
+                for (int version = 1; version < versionCount; version++) {
+                    int commitTime = buffer.getInt();
+                    chain.append(buffer.getInt(), commitTime);
+                }
+                store.setValue(slot, value);
+                store.setCurrValue(slot, value);
+                store.setVersionChain(slot, chain);
+                store.setAvailableForReading(slot, readable);
+            }
+            return checkpointTime;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read the checkpoint " + file + ".", e);
+        }
+    }
+
+    private static int checksum(ByteBuffer buffer, int length) {
+        ByteBuffer content = buffer.duplicate();
+        content.position(0).limit(length);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return (int) crc.getValue();
+    }
+}
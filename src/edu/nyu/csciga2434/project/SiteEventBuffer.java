@@ -0,0 +1,86 @@
+package edu.nyu.csciga2434.project;
+
+import java.util.Arrays;
+
+/**
+ * Stands between one site and the listener of the transaction manager when there are site worker threads.
+ * While the sites do their part of a commit or abort in parallel, every site keeps its events here,
+ * then the thread running the ticks passes them on site by site in the order of site ID,
+ * so the listener sees the same events in the same order as when the sites are done one after another.
+ * Outside of that the events are passed on at once.
+ */
+public class SiteEventBuffer implements EngineEventListener {
+
+    private static final int FIELD_NUMBER = 6;
+
+    private final EngineEventListener listener;
+    private boolean buffering;
+    private EventType[] types;
+    private int[] fields;
+    private int count;
+
+    public SiteEventBuffer(EngineEventListener listener) {
+        this.listener = listener;
+        this.types = new EventType[16];
+        this.fields = new int[16 * FIELD_NUMBER];
+    }
+
+
+    /**
+     *  keep the events from now on, called before the site is handed to a site worker
+     */
+    public void startBuffering() {
+        this.buffering = true;
+    }
+
+
+    /**
+     *  pass on the events kept so far in the order they were reported and stop keeping them,
+     *  called by the thread running the ticks once the site worker is done
+     */
+    public void passOn() {
+        this.buffering = false;
+        for (int i = 0; i < count; i++) {
+            int base = i * FIELD_NUMBER;
+            listener.onEvent(types[i], fields[base], fields[base + 1], fields[base + 2], fields[base + 3], fields[base + 4], fields[base + 5]);
+            types[i] = null;
+        }
+        count = 0;
+    }
+
+    @Override
+    public void onCommand(CharSequence command) {
+        listener.onCommand(command);
+    }
+
+    @Override
+    public void onEvent(EventType type, int transactionID, int variableID, int siteID, int value, int time, int otherTransactionID) {
+        if (!buffering) {
+            listener.onEvent(type, transactionID, variableID, siteID, value, time, otherTransactionID);
+            return;
+        }
+        if (count == types.length) {
+            types = Arrays.copyOf(types, count * 2);
+            fields = Arrays.copyOf(fields, count * 2 * FIELD_NUMBER);
+        }
+        types[count] = type;
+        int base = count * FIELD_NUMBER;
+        fields[base] = transactionID;
+        fields[base + 1] = variableID;
+        fields[base + 2] = siteID;
+        fields[base + 3] = value;
+        fields[base + 4] = time;
+        fields[base + 5] = otherTransactionID;
+        count++;
+    }
+
+    @Override
+    public void flush() {
+        listener.flush();
+    }
+
+    @Override
+    public void close() {
+        listener.close();
+    }
+}
@@ -0,0 +1,204 @@
+package edu.nyu.csciga2434.project;
+
+import java.util.*;
+
+/**
+ * The read-write conflicts between concurrent read-write transactions under serializable snapshot isolation.
+ * T1 -> T2 means T1 read a version of a variable older than the one T2 writes, so T1 comes before T2 in any serial order.
+ * Every cycle of such conflicts passes a transaction having one in and one out,
+ * so a transaction with both is not allowed to commit, which is stricter than needed but never misses a cycle.
+ * If that transaction has committed already, the other end of the new conflict is the one which can no longer commit.
+ * The conflicts with an aborted transaction are dropped, so the others are not aborted for nothing.
+ * A committed transaction is kept as long as some active transaction started before it committed,
+ * since only those can still have conflicts with it.
+ */
+public class SnapshotConflictTracker {
+
+    // stands for a committed transaction which is forgotten while others still have a conflict with it
+    private static final int FORGOTTEN_TRANSACTION = -1;
+
+    private static class State {
+        private final int startTime;
+        private int commitTime;
+        // transactions having a conflict to this one, and from this one
+        private final Set<Integer> inConflicts;
+        private final Set<Integer> outConflicts;
+        private boolean doomed;
+        private final Set<Integer> readVariables;
+        private final Set<Integer> writtenVariables;
+
+        private State(int startTime) {
+            this.startTime = startTime;
+            this.commitTime = -1;
+            this.inConflicts = new HashSet<>();
+            this.outConflicts = new HashSet<>();
+            this.readVariables = new HashSet<>();
+            this.writtenVariables = new HashSet<>();
+        }
+
+        private boolean ifCommitted() {
+            return commitTime != -1;
+        }
+    }
+
+    // transaction ID -> its state, active ones and committed ones which may still conflict
+    private Map<Integer, State> states;
+    // variable ID -> transactions which read it from a snapshot
+    private Map<Integer, Set<Integer>> readersOfVariable;
+    // variable ID -> transactions which wrote it
+    private Map<Integer, Set<Integer>> writersOfVariable;
+
+    public SnapshotConflictTracker() {
+        this.states = new HashMap<>();
+        this.readersOfVariable = new HashMap<>();
+        this.writersOfVariable = new HashMap<>();
+    }
+
+    public void begin(int transactionID, int startTime) {
+        states.put(transactionID, new State(startTime));
+    }
+
+
+    /**
+     *  This transaction read the variable from its snapshot,
+     *  so it comes before every concurrent transaction writing the variable
+     */
+    public void recordRead(int transactionID, int variableID) {
+        State reader = states.get(transactionID);
+        if (reader == null || !reader.readVariables.add(variableID)) {
+            return;
+        }
+        readersOfVariable.computeIfAbsent(variableID, k -> new HashSet<>()).add(transactionID);
+        for (int writerID : writersOfVariable.getOrDefault(variableID, Collections.emptySet())) {
+            if (writerID != transactionID && ifConcurrent(reader, states.get(writerID))) {
+                addConflict(transactionID, writerID);
+            }
+        }
+    }
+
+
+    /**
+     *  This transaction wrote the variable,
+     *  so every concurrent transaction which read the variable from its snapshot comes before it
+     */
+    public void recordWrite(int transactionID, int variableID) {
+        State writer = states.get(transactionID);
+        if (writer == null || !writer.writtenVariables.add(variableID)) {
+            return;
+        }
+        writersOfVariable.computeIfAbsent(variableID, k -> new HashSet<>()).add(transactionID);
+        for (int readerID : readersOfVariable.getOrDefault(variableID, Collections.emptySet())) {
+            if (readerID != transactionID && ifConcurrent(writer, states.get(readerID))) {
+                addConflict(readerID, transactionID);
+            }
+        }
+    }
+
+
+    /**
+     *  return true if this transaction is not part of any possible cycle of read-write conflicts
+     */
+    public boolean ifCanCommit(int transactionID) {
+        State state = states.get(transactionID);
+        return state == null || !(state.doomed || (!state.inConflicts.isEmpty() && !state.outConflicts.isEmpty()));
+    }
+
+    public void commit(int transactionID, int commitTime) {
+        State state = states.get(transactionID);
+        if (state != null) {
+            state.commitTime = commitTime;
+        }
+    }
+
+
+    /**
+     *  forget an aborted transaction
+     */
+    public void remove(int transactionID) {
+        State state = states.remove(transactionID);
+        if (state == null) {
+            return;
+        }
+        forgetVariables(transactionID, state.readVariables, readersOfVariable);
+        forgetVariables(transactionID, state.writtenVariables, writersOfVariable);
+        for (int otherID : state.inConflicts) {
+            State other = states.get(otherID);
+            if (other != null) {
+                other.outConflicts.remove(transactionID);
+            }
+        }
+        for (int otherID : state.outConflicts) {
+            State other = states.get(otherID);
+            if (other != null) {
+                other.inConflicts.remove(transactionID);
+            }
+        }
+    }
+
+
+    /**
+     *  forget the committed transactions which committed before every active transaction started
+     */
+    public void prune(int oldestActiveStartTime) {
+        Iterator<Map.Entry<Integer, State>> iterator = states.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, State> entry = iterator.next();
+            State state = entry.getValue();
+            if (state.ifCommitted() && state.commitTime < oldestActiveStartTime) {
+                iterator.remove();
+                forgetVariables(entry.getKey(), state.readVariables, readersOfVariable);
+                forgetVariables(entry.getKey(), state.writtenVariables, writersOfVariable);
+                // the others keep having these conflicts, only with a transaction no longer known
+                for (int otherID : state.inConflicts) {
+                    State other = states.get(otherID);
+                    if (other != null) {
+                        other.outConflicts.remove(entry.getKey());
+                        other.outConflicts.add(FORGOTTEN_TRANSACTION);
+                    }
+                }
+                for (int otherID : state.outConflicts) {
+                    State other = states.get(otherID);
+                    if (other != null) {
+                        other.inConflicts.remove(entry.getKey());
+                        other.inConflicts.add(FORGOTTEN_TRANSACTION);
+                    }
+                }
+            }
+        }
+    }
+
+
+    private void addConflict(int fromID, int toID) {
+        State from = states.get(fromID);
+        State to = states.get(toID);
+        from.outConflicts.add(toID);
+        to.inConflicts.add(fromID);
+        if (to.ifCommitted() && !to.outConflicts.isEmpty()) {
+            from.doomed = true;
+        }
+        if (from.ifCommitted() && !from.inConflicts.isEmpty()) {
+            to.doomed = true;
+        }
+    }
+
+
+    /**
+     *  two transactions are concurrent if neither committed before the other started,
+     *  a commit at the start time of the other one counts as concurrent since ends are done at the end of a tick
+     */
+    private static boolean ifConcurrent(State a, State b) {
+        return (!a.ifCommitted() || a.commitTime >= b.startTime) && (!b.ifCommitted() || b.commitTime >= a.startTime);
+    }
+
+    private static void forgetVariables(int transactionID, Set<Integer> variables, Map<Integer, Set<Integer>> index) {
+        for (int variableID : variables) {
+            Set<Integer> transactions = index.get(variableID);
+            if (transactions != null) {
+                transactions.remove(transactionID);
+                if (transactions.isEmpty()) {
+                    index.remove(variableID);
+                }
+            }
+        }
+    }
+}
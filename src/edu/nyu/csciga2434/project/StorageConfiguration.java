@@ -0,0 +1,73 @@
+package edu.nyu.csciga2434.project;
+
+import java.io.File;
+
+/**
+ * Where the sites keep their committed state.
+ * Inside the configuration,
+ * there is
+ * a field for the directory holding one write-ahead log and one checkpoint per site, null if the committed state is kept in memory only,
+ * a field for the number of ticks between two checkpoints, 0 meaning no checkpoint is taken and the logs grow without end.
+ */
+public class StorageConfiguration {
+
+    public static final int DEFAULT_CHECKPOINT_INTERVAL = 100;
+
+    private final File logDirectory;
+    private final int checkpointInterval;
+
+    public StorageConfiguration(File logDirectory) {
+        this(logDirectory, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    public StorageConfiguration(File logDirectory, int checkpointInterval) {
+        if (checkpointInterval < 0) {
+            throw new IllegalArgumentException("The checkpoint interval should not be negative.");
+        }
+        if (logDirectory != null && logDirectory.exists() && !logDirectory.isDirectory()) {
+            throw new IllegalArgumentException(logDirectory + " is not a directory.");
+        }
+        this.logDirectory = logDirectory;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+
+    /**
+     *  nothing is written to disk, as before
+     */
+    public static StorageConfiguration inMemory() {
+        return new StorageConfiguration(null);
+    }
+
+    public boolean ifDurable() {
+        return logDirectory != null;
+    }
+
+    public File getLogDirectory() {
+        return logDirectory;
+    }
+
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    public boolean ifCheckpointing() {
+        return ifDurable() && checkpointInterval > 0;
+    }
+
+
+    /**
+     *  the log file of this site
+     */
+    public File getLogFile(int siteID) {
+        return new File(logDirectory, "site-" + siteID + ".wal");
+    }
+
+
+    /**
+     *  the checkpoint file of this site
+     */
+    public File getCheckpointFile(int siteID) {
+        return new File(logDirectory, "site-" + siteID + ".ckpt");
+    }
+}
@@ -1,8 +1,8 @@
 package edu.nyu.csciga2434.project;
 
-import java.io.FileReader;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Scanner;
 
 /**
  * User: Minda Fang
@@ -12,25 +12,101 @@ import java.util.Scanner;
  */
 public class Test {
 
-    private static TransactionManager manager = new TransactionManager();
+    private static TransactionManager manager;
+    private static TextEventRenderer renderer;
 
-    public static void main(String[] args) {
+    /**
+     *  args[0] is the input file, a binary op-log if it ends with .oplog and text commands otherwise.
+     *  Optionally followed by the number of sites, the number of variables, the replication factor
+     *  the placement policy(modulo, range or hash), the number of site worker threads
+     *  the directory of the write-ahead logs, the number of ticks between two checkpoints
+     *  the number of variables a recovered site catches up in one tick
+     *  the isolation of read-write transactions(locking, si or ssi)
+     *  how deadlocks are dealt with(detect, wait-die or wound-wait), the lock wait timeout in ticks
+     *  the most ticks between two deadlock checks and the op-log file to record the commands run into,
+     *  e.g. Input.txt 100 100000 3 hash 4 /var/lib/adb 100 64 ssi detect 20 8 Input.oplog,
+     *  where - as the directory keeps everything in memory
+     */
+    public static void main(String[] args) throws IOException {
         String input = args[0];
+        renderer = new TextEventRenderer(System.out);
+        manager = new TransactionManager(parseConfiguration(args), renderer);
+        OpLogWriter recorder = null;
+        if (args.length > 13) {
+            recorder = new OpLogWriter(new FileOutputStream(args[13]));
+            manager.setOpLogRecorder(recorder);
+        }
         parseInput(input);
+        if (recorder != null) {
+            recorder.close();
+        }
+    }
+
+    private static ClusterConfiguration parseConfiguration(String[] args) {
+        if (args.length < 2) {
+            return ClusterConfiguration.defaultConfiguration();
+        }
+        int siteTotalNumber = Integer.parseInt(args[1]);
+        int variableTotalNumber = args.length > 2 ? Integer.parseInt(args[2]) : siteTotalNumber * 2;
+        int replicationFactor = args.length > 3 ? Integer.parseInt(args[3]) : siteTotalNumber;
+        String policyName = args.length > 4 ? args[4] : "modulo";
+        PlacementPolicy policy;
+        if (policyName.equals("range")) {
+            policy = new RangePlacementPolicy();
+        } else if (policyName.equals("hash")) {
+            policy = new ConsistentHashPlacementPolicy();
+        } else if (policyName.equals("modulo")) {
+            policy = new ModuloPlacementPolicy();
+        } else {
+            throw new IllegalArgumentException("Unknown placement policy " + policyName + ".");
+        }
+        int siteWorkerThreads = args.length > 5 ? Integer.parseInt(args[5]) : 0;
+        StorageConfiguration storage = StorageConfiguration.inMemory();
+        if (args.length > 6 && !args[6].equals("-")) {
+            storage = args.length > 7 ? new StorageConfiguration(new File(args[6]), Integer.parseInt(args[7]))
+                    : new StorageConfiguration(new File(args[6]));
+        }
+        int catchUpBatchSize = args.length > 8 ? Integer.parseInt(args[8]) : 0;
+        String isolationName = args.length > 9 ? args[9] : "locking";
+        TypeOfIsolation isolation;
+        if (isolationName.equals("locking")) {
+            isolation = TypeOfIsolation.Locking;
+        } else if (isolationName.equals("si")) {
+            isolation = TypeOfIsolation.Snapshot;
+        } else if (isolationName.equals("ssi")) {
+            isolation = TypeOfIsolation.SerializableSnapshot;
+        } else {
+            throw new IllegalArgumentException("Unknown isolation " + isolationName + ".");
+        }
+        String deadlockHandlingName = args.length > 10 ? args[10] : "detect";
+        TypeOfDeadlockHandling deadlockHandling;
+        if (deadlockHandlingName.equals("detect")) {
+            deadlockHandling = TypeOfDeadlockHandling.Detection;
+        } else if (deadlockHandlingName.equals("wait-die")) {
+            deadlockHandling = TypeOfDeadlockHandling.WaitDie;
+        } else if (deadlockHandlingName.equals("wound-wait")) {
+            deadlockHandling = TypeOfDeadlockHandling.WoundWait;
+        } else {
+            throw new IllegalArgumentException("Unknown deadlock handling " + deadlockHandlingName + ".");
+        }
+        int lockWaitTimeout = args.length > 11 ? Integer.parseInt(args[11]) : 0;
+        int maxDetectionInterval = args.length > 12 ? Integer.parseInt(args[12]) : 1;
+        return new ClusterConfiguration(siteTotalNumber, variableTotalNumber, replicationFactor, policy, siteWorkerThreads, storage,
+                catchUpBatchSize, new ConcurrencyConfiguration(isolation, deadlockHandling, lockWaitTimeout, maxDetectionInterval));
     }
 
     private static void parseInput(String input) {
         System.out.println("[New Test] Advanced Database Project New round of testing starts! By Minda Fang and Kim Tae Young.");
         try {
-            FileReader fileReader = new FileReader(input);
-            Scanner scanner = new Scanner(fileReader);
-            while (scanner.hasNext()) {
-                manager.readCommand(scanner.nextLine());
-            }
-            if (manager.getBufferedWaitList() != null) {
-                System.out.println("Buffered WaitList Size:" + manager.getBufferedWaitList().size());
-                System.out.println("[EOF] The testing is ended!");
+            if (input.endsWith(".oplog")) {
+                new OpLogReader(new File(input)).replay(manager);
+            } else {
+                new CommandStreamReader(new File(input)).replay(manager);
             }
+            manager.shutdown();
+            renderer.close();
+            System.out.println("Buffered WaitList Size:" + manager.getBufferedOperationCount());
+            System.out.println("[EOF] The testing is ended!");
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -0,0 +1,432 @@
+package edu.nyu.csciga2434.project;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes the events as the same lines the engine used to print on the console.
+ * Reporting an event only copies its fields into a ring buffer,
+ * the text is built and written by a renderer thread through a buffered writer,
+ * so the engine never waits for the console unless the ring is full.
+ */
+public class TextEventRenderer implements EngineEventListener {
+
+    private static final int FIELD_NUMBER = 6;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final int mask;
+    private final EventType[] types;
+    private final int[] fields;
+    // the command text for a command entry, each entry keeps its builder so echoing a command allocates nothing
+    private final StringBuilder[] commands;
+    // next entry to be written by the reporting threads, guarded by this
+    private volatile long head;
+    // next entry to be rendered by the renderer thread
+    private volatile long tail;
+    // every entry before it has been rendered and flushed
+    private volatile long flushed;
+    private volatile boolean running;
+
+    private final Writer writer;
+    private final StringBuilder line;
+    private final String lineSeparator;
+    private final Thread rendererThread;
+
+    /**
+     *  capacity is rounded up to a power of two
+     */
+    public TextEventRenderer(OutputStream out, int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.types = new EventType[size];
+        this.fields = new int[size * FIELD_NUMBER];
+        this.commands = new StringBuilder[size];
+        this.head = 0;
+        this.tail = 0;
+        this.flushed = 0;
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, Charset.defaultCharset()), 1 << 16);
+        this.line = new StringBuilder(256);
+        this.lineSeparator = System.lineSeparator();
+        this.running = true;
+        this.rendererThread = new Thread(this::renderLoop, "event-renderer");
+        this.rendererThread.setDaemon(true);
+        this.rendererThread.start();
+    }
+
+    public TextEventRenderer(OutputStream out) {
+        this(out, 1 << 14);
+    }
+
+
+    @Override
+    public synchronized void onCommand(CharSequence command) {
+        long slot = reserve();
+        int index = (int) (slot & mask);
+        types[index] = null;
+        if (commands[index] == null) {
+            commands[index] = new StringBuilder(32);
+        }
+        commands[index].setLength(0);
+        commands[index].append(command);
+        head = slot + 1;
+    }
+
+    @Override
+    public synchronized void onEvent(EventType type, int transactionID, int variableID, int siteID, int value, int time, int otherTransactionID) {
+        long slot = reserve();
+        int index = (int) (slot & mask);
+        types[index] = type;
+        int base = index * FIELD_NUMBER;
+        fields[base] = transactionID;
+        fields[base + 1] = variableID;
+        fields[base + 2] = siteID;
+        fields[base + 3] = value;
+        fields[base + 4] = time;
+        fields[base + 5] = otherTransactionID;
+        head = slot + 1;
+    }
+
+
+    /**
+     *  wait until the renderer thread has written everything reported so far
+     */
+    @Override
+    public void flush() {
+        long target = head;
+        while (flushed < target) {
+            if (!rendererThread.isAlive()) {
+                return;
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        running = false;
+        try {
+            rendererThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    /**
+     *  wait for a free entry in the ring, called while holding this
+     */
+    private long reserve() {
+        long slot = head;
+        while (slot - tail > mask) {
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+        return slot;
+    }
+
+
+    /**
+     *  body of the renderer thread
+     */
+    private void renderLoop() {
+        try {
+            while (running || tail < head) {
+                long current = tail;
+                if (current == head) {
+                    if (flushed < current) {
+                        writer.flush();
+                        flushed = current;
+                    }
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    continue;
+                }
+                int index = (int) (current & mask);
+                EventType type = types[index];
+                line.setLength(0);
+                if (type == null) {
+                    line.append('\n').append("[New Command] ").append(commands[index]);
+                } else {
+                    int base = index * FIELD_NUMBER;
+                    format(line, type, fields[base], fields[base + 1], fields[base + 2],
+                            fields[base + 3], fields[base + 4], fields[base + 5]);
+                }
+                // the entry can be reused from now on
+                tail = current + 1;
+                if (type != EventType.Aborted) {
+                    writeLine(line);
+                }
+            }
+            writer.flush();
+            flushed = tail;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void writeLine(StringBuilder text) throws IOException {
+        writer.append(text);
+        writer.write(lineSeparator);
+    }
+
+
+    /**
+     *  Append the text of one event, without the line separator at the end.
+     *  Aborted used to print nothing and appends nothing, DumpEnd is an empty line.
+     */
+    public static void format(StringBuilder out, EventType type, int t, int x, int s, int value, int time, int other) {
+        switch (type) {
+            case NewRound:
+                out.append("\n[New Round] Time ").append(time);
+                break;
+            case CommandBegin:
+                out.append("\n[New Command] begin(T").append(t).append(')');
+                break;
+            case CommandBeginReadOnly:
+                out.append("\n[New Command] beginRO(T").append(t).append(')');
+                break;
+            case CommandRead:
+                out.append("\n[New Command] R(T").append(t).append(",x").append(x).append(')');
+                break;
+            case CommandWrite:
+                out.append("\n[New Command] W(T").append(t).append(",x").append(x).append(',').append(value).append(')');
+                break;
+            case CommandEnd:
+                out.append("\n[New Command] end(T").append(t).append(')');
+                break;
+            case CommandFail:
+                out.append("\n[New Command] fail(").append(s).append(')');
+                break;
+            case CommandRecover:
+                out.append("\n[New Command] recover(").append(s).append(')');
+                break;
+            case CommandBatch:
+                out.append("\n[New Command] batch(T").append(t).append(") of ").append(value).append(" operations");
+                break;
+            case ReadOnlyReadRetried:
+                appendRetried(out, TypeOfTransaction.Read_Only, TypeOfOperation.OP_READ, t, x, value, time, other);
+                break;
+            case ReadRetried:
+                appendRetried(out, TypeOfTransaction.Read_Write, TypeOfOperation.OP_READ, t, x, value, time, other);
+                break;
+            case WriteRetried:
+                appendRetried(out, TypeOfTransaction.Read_Write, TypeOfOperation.OP_WRITE, t, x, value, time, other);
+                break;
+            case ReadOnlyTransactionBegan:
+                out.append("[Success] Read-only transaction T").append(t).append(" initiated.");
+                break;
+            case ReadWriteTransactionBegan:
+                out.append("[Success] Read-write transaction T").append(t).append(" initiated.");
+                break;
+            case BeginRejected:
+                out.append("[Failure] Transaction T").append(t).append(" might be already in progress.");
+                break;
+            case ReadRejected:
+                out.append("[Failure] Please check if such transaction T").append(t).append(" has began or such variable x")
+                        .append(x).append(" exists.");
+                break;
+            case WriteRejectedNoTransaction:
+                out.append("[Failure] This transaction may be aborted already or not initiated!");
+                break;
+            case WriteRejectedReadOnly:
+                out.append("[Failure] Please make sure that this transaction is actually a READ_WRITE one!");
+                break;
+            case SnapshotRead:
+                out.append("[Success] The snapshot value of variable x").append(x).append(" in Site ").append(s)
+                        .append(" is ").append(value).append('.');
+                break;
+            case ReadSucceeded:
+                out.append("[Success] The value of variable x").append(x).append(" read by Transaction T").append(t)
+                        .append(" from Site ").append(s).append(" is ").append(value).append('.');
+                break;
+            case WriteSucceeded:
+                out.append("[Success] Variable x").append(x).append(" on all up sites has their uncommitted value to be ")
+                        .append(value).append(" by transaction T").append(t).append(" and it have already had all the locks.");
+                break;
+            case WriteSucceededAfterLocking:
+                out.append("[Success] Variable x").append(x).append(" on all up sites has their temp uncommitted value to be ")
+                        .append(value).append(" by transaction T").append(t).append(" and it have already had all the locks.");
+                break;
+            case ReadOnlyReadBuffered:
+                out.append("[Buffered] Variable x").append(x).append(" is not available for read-only transaction T").append(t)
+                        .append(" at this time.");
+                break;
+            case VariableUnavailableBuffered:
+                out.append("[Buffered] Variable x").append(x).append(" is not available for read_write transaction T").append(t)
+                        .append(" at this time.");
+                break;
+            case BlockedByBufferedOperation:
+                out.append("[Buffered] Transaction T").append(t).append(" is blocked by Transaction T").append(other)
+                        .append(" on Variable x").append(x).append(" in the buffered operation list.");
+                break;
+            case ReadBlocked:
+                out.append("[Buffered] R(T").append(t).append(", x").append(x)
+                        .append(") has to wait because it cannot acquire the read lock on that variable blocked by Transaction T")
+                        .append(other).append('.');
+                break;
+            case WriteBlocked:
+                out.append("[Buffered] W(T").append(t).append(", x").append(x).append(", ").append(value)
+                        .append(") has to wait because it cannot acquire the write lock on that variable blocked by Transaction T")
+                        .append(other).append('.');
+                break;
+            case BlockedByLock:
+                out.append("[Failure] Transaction T").append(t).append(" is blocked by Transaction T").append(other)
+                        .append(" on Variable x").append(x).append('.');
+                break;
+            case BlockedByLockAtSite:
+                out.append("[Failure] Transaction T").append(t).append(" is blocked by Transaction T").append(other)
+                        .append(" on Variable x").append(x).append(" at Site ").append(s).append('.');
+                break;
+            case ReadLockGranted:
+                out.append("A read lock added in site ").append(s).append(" by Transaction T").append(t)
+                        .append(" on variable x").append(x).append('!');
+                break;
+            case WriteLockGranted:
+                out.append("[Write lock added] At Site ").append(s).append(", a WRITE lock on Variable x").append(x)
+                        .append(" is added by Transaction T").append(t).append('.');
+                break;
+            case WriteLockRefused:
+                out.append("[Fail to add lock] At Site ").append(s).append(", a WRITE lock on Variable x").append(x)
+                        .append(" cannot be added by Transaction T").append(t).append('.');
+                break;
+            case ReadLockUpgraded:
+                out.append("[Read lock upgraded] At Site ").append(s).append(", a READ lock on Variable x").append(x)
+                        .append(" is upgraded to a WRITE one by Transaction T").append(t).append('.');
+                break;
+            case ReadLockAlreadyHeld:
+            case WriteLockAlreadyHeld:
+                out.append("A ").append(type == EventType.ReadLockAlreadyHeld ? TypeOfLock.Read : TypeOfLock.Write)
+                        .append(" lock in site ").append(s).append(" has already got by Transaction T").append(t)
+                        .append(" on variable x").append(x).append('!');
+                break;
+            case ReadLockReleased:
+            case WriteLockReleased:
+                out.append("[Success] The ").append(type == EventType.ReadLockReleased ? "READ" : "WRITE")
+                        .append(" lock on variable x").append(x).append(" held by Transaction T").append(t).append(" is removed.");
+                break;
+            case UncommittedWrite:
+                out.append("[Success] Variable x").append(x).append(" at Site ").append(s)
+                        .append(" has temporary uncommitted value: ").append(value).append('.');
+                break;
+            case VariableCommitted:
+                out.append("Now this variable to be updated is x").append(x).append(" at Site").append(s)
+                        .append(" with new value ").append(value).append(" at time ").append(time).append('.');
+                break;
+            case CommitVariableMissing:
+                out.append("[Failure] Cannot find this variable x").append(x).append(" in this site ").append(s).append('.');
+                break;
+            case EndRequested:
+                out.append("[Report] Now analyzing whether Transaction T").append(t).append(" can commit or not.");
+                break;
+            case EndRejected:
+                out.append("[Failure] No such Transaction T").append(t).append(" to end!");
+                break;
+            case AlreadyAborted:
+                out.append("[Aborted] This transaction T").append(t).append(" has already been aborted!");
+                break;
+            case CommitBlocked:
+                out.append("[Blocked] This transaction T").append(t).append(" has been blocked! It will try to commit again once its operations are done.");
+                break;
+            case ReadOnlyCommitWaiting:
+                out.append("[Waiting] This Read-only Transaction T").append(t)
+                        .append(" cannot commit at this time because there exists some sites it reads from are not recovered from failure..");
+                break;
+            case Committed:
+                out.append("[Committed] This transaction T").append(t).append(" has been committed!");
+                break;
+            case ReportHeader:
+                out.append("[Report] Now reporting all the execution records of Transaction T").append(t).append(':');
+                break;
+            case ReportEmpty:
+                out.append("[Report] This Transaction T").append(t).append(" seems to have no actions.");
+                break;
+            case ReportRead:
+                out.append("Transaction T").append(t).append(" reads value of Variable x").append(x).append(" in Site ").append(s)
+                        .append(" and gets ").append(value).append(" at Time ").append(time).append('.');
+                break;
+            case ReportWrite:
+                out.append("Transaction T").append(t).append(" writes value ").append(value).append(" to Variable x").append(x)
+                        .append(" in all available Sites at Time ").append(time).append('.');
+                break;
+            case SiteFailed:
+                out.append("[Down] Site ").append(s).append(" is now failed.");
+                break;
+            case FailRejected:
+                out.append("[Failure] Unable to fail this site. Maybe it is still down or not even exists!");
+                break;
+            case VariableCaughtUp:
+                out.append("[Catch Up] x").append(x).append(" at site ").append(s)
+                        .append(" caught up to value ").append(value).append(" and can be read again.");
+                break;
+            case SnapshotWriteConflict:
+                out.append("[Abort] Transaction T").append(t).append(" is aborted since x").append(x)
+                        .append(" was committed by another transaction after T").append(t).append(" started.");
+                break;
+            case SerializationConflict:
+                out.append("[Abort] Transaction T").append(t)
+                        .append(" is aborted since it has read-write conflicts with concurrent transactions both in and out.");
+                break;
+            case DiedInsteadOfWaiting:
+                out.append("[Abort] Transaction T").append(t).append(" is aborted instead of waiting for the older transaction T")
+                        .append(other).append('.');
+                break;
+            case WoundedByOlder:
+                out.append("[Abort] Transaction T").append(t).append(" is aborted since the older transaction T")
+                        .append(other).append(" would wait for it.");
+                break;
+            case LockWaitTimedOut:
+                out.append("[Abort] Transaction T").append(t).append(" is aborted since it has waited for a lock on x").append(x)
+                        .append(" since time ").append(time).append(" longer than its timeout.");
+                break;
+            case SiteRecovered:
+                out.append("[Recover] This site ").append(s).append(" is recovered.");
+                break;
+            case RecoverRejected:
+                out.append("[Failure] Unable to recover this site. Maybe it is still working or not even exists!");
+                break;
+            case AffectedBySiteFailure:
+                out.append("Transaction T").append(t).append(" should be aborted!");
+                break;
+            case ToBeAbortedHeader:
+                out.append("[Report] Now printing the ToBeAbortedList:");
+                break;
+            case ToBeAborted:
+                out.append("Transaction T").append(t).append(" should be aborted.");
+                break;
+            case WaitForHeader:
+                out.append("\n[Report] Now printing the wait-for relations:");
+                break;
+            case WaitFor:
+                out.append("Transaction T").append(t).append(" is waiting for Transaction T").append(other).append('.');
+                break;
+            case CycleFound:
+                out.append("A cycle is found!");
+                break;
+            case NoDeadlockFound:
+                out.append("[Report] No deadlock is found.");
+                break;
+            case DeadlockVictim:
+                out.append("Transaction T").append(t).append(" should be aborted to break the deadlocks");
+                break;
+            case DumpSite:
+                out.append("At site ").append(s).append(':');
+                break;
+            case DumpValue:
+                out.append('x').append(x).append(" has value of ").append(value).append('.');
+                break;
+            case DumpEnd:
+            case Aborted:
+            default:
+                break;
+        }
+    }
+
+    private static void appendRetried(StringBuilder out, TypeOfTransaction typeOfTransaction, TypeOfOperation typeOfOperation,
+                                      int t, int x, int value, int time, int other) {
+        out.append("[Report] Now processing the operation buffered at time ").append(time)
+                .append(" which is the ").append(typeOfTransaction).append(" transaction T").append(t)
+                .append(" asking to ").append(typeOfOperation).append(" on variable x").append(x)
+                .append(" with value ").append(value).append(" but previously blocked by Transaction T").append(other).append('.');
+    }
+}
@@ -1,7 +1,6 @@
 package edu.nyu.csciga2434.project;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
 /**
  * User: Minda Fang
@@ -12,7 +11,12 @@ import java.util.List;
  * there is a field for transaction ID,
  * a field for transaction Type,
  * a field for transaction start-time,
- * and a field for a list of this transaction’s operation history.
+ * a field for the number of ticks it waits for a lock before it is aborted, 0 meaning forever,
+ * a field for a list of this transaction’s operation history,
+ * a field for the before-images of its uncommitted writes, null for a read-only transaction,
+ * a field for the time it was granted its first lock, -1 while it holds none,
+ * and a field for the locks it holds, by site and in the order they were granted.
+ * Its write locks are exactly the copies it has to commit, so commit and abort only visit these sites and locks.
  */
 
 public class Transaction {
@@ -20,14 +24,27 @@ public class Transaction {
 	private final int transactionID;
 	private final TypeOfTransaction type;
 	private final int startTime;
+	private final int lockWaitTimeout;
     private List<Operation> operationHistory;
+    private final UndoBuffer undoBuffer;
+    // site ID -> (variable ID -> type of the lock held on it)
+    private final TreeMap<Integer, LinkedHashMap<Integer, TypeOfLock>> lockSet;
+    private int firstLockTime;
 
 
 	public Transaction(int transactionID, TypeOfTransaction type, int startTime){
+		this(transactionID, type, startTime, 0);
+	}
+
+	public Transaction(int transactionID, TypeOfTransaction type, int startTime, int lockWaitTimeout){
 		this.transactionID = transactionID;
 		this.type = type;
 		this.startTime = startTime;
+		this.lockWaitTimeout = lockWaitTimeout;
         this.operationHistory = new ArrayList<>();
+        this.undoBuffer = type == TypeOfTransaction.Read_Write ? new UndoBuffer() : null;
+        this.lockSet = new TreeMap<>();
+        this.firstLockTime = -1;
     }
 
 	public TypeOfTransaction getTransactionType() {
@@ -38,6 +55,10 @@ public class Transaction {
 		return startTime;
 	}
 
+	public int getLockWaitTimeout() {
+		return lockWaitTimeout;
+	}
+
     public List<Operation> getOperationHistory() {
         return operationHistory;
     }
@@ -46,5 +67,55 @@ public class Transaction {
         this.operationHistory.add(op);
     }
 
+    public UndoBuffer getUndoBuffer() {
+        return undoBuffer;
+    }
+
+
+    /**
+     *  remember a lock granted to this transaction at this time, a write lock replaces the read lock on the same copy in place
+     */
+    public void addToLockSet(int siteID, int variableID, TypeOfLock lockType, int time) {
+        this.lockSet.computeIfAbsent(siteID, k -> new LinkedHashMap<>()).put(variableID, lockType);
+        if (this.firstLockTime == -1) {
+            this.firstLockTime = time;
+        }
+    }
+
+    public int getFirstLockTime() {
+        return firstLockTime;
+    }
+
+    public TreeMap<Integer, LinkedHashMap<Integer, TypeOfLock>> getLockSet() {
+        return lockSet;
+    }
+
+
+    /**
+     *  the variables this transaction holds write locks on at this site, in the order the locks were granted
+     */
+    public int[] getWriteSetAtSite(int siteID) {
+        LinkedHashMap<Integer, TypeOfLock> locks = lockSet.get(siteID);
+        if (locks == null) {
+            return new int[0];
+        }
+        int[] variables = new int[locks.size()];
+        int count = 0;
+        for (Map.Entry<Integer, TypeOfLock> entry : locks.entrySet()) {
+            if (entry.getValue() == TypeOfLock.Write) {
+                variables[count++] = entry.getKey();
+            }
+        }
+        return Arrays.copyOf(variables, count);
+    }
+
+
+    /**
+     *  the locks at a failed site are erased with its lock table
+     */
+    public void forgetLocksAtSite(int siteID) {
+        this.lockSet.remove(siteID);
+    }
+
 
 }
\ No newline at end of file
@@ -1,6 +1,10 @@
 package edu.nyu.csciga2434.project;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
 
 /**
  * User: Minda Fang
@@ -14,127 +18,832 @@ import java.util.*;
  * This applies to read-only transactions as well which must have access to the latest version of each variable before the transaction begins. 
  * T may also have to wait for conflicting locks. 
  * While T is locked, no transaction can bypass it.
+ *
+ * Commands are processed one tick at a time by a single thread, e.g. the one of a CommandDispatcher collecting
+ * the commands submitted by many clients, since time, blocking and deadlock detection are all defined per tick.
+ * Nothing in the manager or the sites is locked. When the configuration asks for site worker threads,
+ * the per-site part of commit and abort runs on all the sites in parallel, every site on one worker,
+ * while the tick thread waits for all of them. The events reported by the sites meanwhile are kept per site
+ * and passed on in the order of site ID, so the output is the same whatever the number of workers.
  */
 
 public class TransactionManager {
 
-    private static final int DEFAULT_SITE_TOTAL_NUMBER = 10;
-    private static final int DEFAULT_VARIABLE_TOTAL_NUMBER = 20;
+    private final int siteTotalNumber;
+    private final int variableTotalNumber;
+    // which sites hold which variables and which sites are up
+    private final ReplicaDirectory replicaDirectory;
 
     private Map<Integer, Site> sites;
+    // 1 to siteTotalNumber
+    private final List<Integer> allSiteIDs;
     private Map<Integer, Transaction> currentTransactions;
     private int time;
     private Set<Integer> committedTransactions;
     private Set<Integer> abortedTransactions;
-    private List<BufferedOperation> bufferedWaitList;
-    private List<WaitFor> waitForList;
+    // variable ID -> operations waiting on that variable in FIFO order
+    private Map<Integer, ArrayDeque<BufferedOperation>> waitQueues;
+    // transaction ID -> its buffered operations
+    private Map<Integer, List<BufferedOperation>> bufferedOperationsOfTransaction;
+    // variables whose waiters should be retried at the start of next tick, since a lock on them was released
+    //      or one of their copies may have become readable
+    private Set<Integer> wokenVariables;
+    private int bufferedOperationCount;
+    private long bufferedSequence;
+    private WaitForGraph waitForGraph;
     private Set<Integer> toBeAbortedList;
-    private Map<Integer, List<Operation>> SiteTransactionHistory;
+    // start-time -> number of active transactions reading from snapshots started at that time,
+    //      read-only ones and, with snapshot isolation, read-write ones
+    private TreeMap<Integer, Integer> activeSnapshotStartTimes;
+    // site ID -> transaction ID -> its successful operations at that site, transactions in the order of their first one
+    private Map<Integer, LinkedHashMap<Integer, List<Operation>>> SiteTransactionHistory;
+    // runs the per-site part of commit and abort, null if it is done one site after another
+    private final ExecutorService siteExecutor;
+    // site ID -> where that site keeps its events while it is done by a site worker, empty without site workers
+    private final Map<Integer, SiteEventBuffer> siteEventBuffers;
+    // where everything that happens is reported
+    private final EngineEventListener listener;
+    // every command run and every tick closed is recorded into it, null if nothing is recorded
+    private OpLogWriter opLogRecorder;
+    private boolean tickOpen;
+    // transactions asked to end in this tick and the futures waiting for them
+    private List<Integer> endTransactionList;
+    private List<CompletableFuture<OperationResult>> endResults;
+    // transactions asked to end while some of their operations were still waiting, tried again once none is waiting
+    private List<Integer> blockedEndTransactionList;
+    private List<CompletableFuture<OperationResult>> blockedEndResults;
+    // future of the operation being executed right now, null if nobody is waiting for it
+    private CompletableFuture<OperationResult> currentResult;
+    // buffered operation being retried right now, so that it hands its lock wait on if it is buffered again
+    private BufferedOperation retriedOperation;
+    // true if the sites keep write-ahead logs
+    private final boolean durable;
+    // futures of the transactions committed in this tick, completed once their writes are on disk
+    private List<CompletableFuture<OperationResult>> committedResults;
+    // number of ticks between two checkpoints, 0 if no checkpoint is taken
+    private final int checkpointInterval;
+    private int lastCheckpointTime;
+    // number of replicated variables a recovered site catches up in one tick, 0 if they wait for new writes
+    private final int catchUpBatchSize;
+    // sites recovered and not caught up yet, with the replicated variables they still have to catch up
+    private Map<Integer, ArrayDeque<Integer>> catchUpQueues;
+    private final TypeOfIsolation isolation;
+    // read-write conflicts of the transactions, null unless the isolation is serializable snapshot isolation
+    private final SnapshotConflictTracker snapshotConflictTracker;
+    private final TypeOfDeadlockHandling deadlockHandling;
+    // lock wait timeout of read-write transactions begun without one of their own
+    private final int defaultLockWaitTimeout;
+    // (deadline, transaction ID) of the transactions waiting for locks with a timeout, earliest first.
+    //      Entries of transactions no longer waiting are dropped when they come up.
+    private PriorityQueue<long[]> lockWaitDeadlines;
+    private final int maxDetectionInterval;
+    // ticks between two deadlock checks right now, grows while no deadlock is found and is back to 1 when one is
+    private int detectionInterval;
+    private int ticksSinceDetection;
+    // new relation count of the wait-for graph at the last check which found no deadlock
+    private long newRelationCountAtLastCheck;
+    // latencies and counts recorded while running, the sizes are read when a snapshot is taken
+    private final EngineMetrics metrics;
+    // lock waits by variable, site and blocking transaction
+    private final LockContentionProfiler lockContentionProfiler;
+
+    public int getBufferedOperationCount() {
+        return this.bufferedOperationCount;
+    }
 
-    public List<BufferedOperation> getBufferedWaitList() {
-        return this.bufferedWaitList;
+    public int getTime() {
+        return this.time;
+    }
+
+
+    /**
+     *  Take a snapshot of the metrics recorded so far and of the sizes right now:
+     *  the locks in the lock table and the versions kept at every site, the buffered operations,
+     *  the active transactions and the ends blocked by waiting operations.
+     *  Like readCommand, it is called by the thread running the ticks.
+     */
+    public MetricsSnapshot getMetricsSnapshot() {
+        Map<String, Long> gauges = new LinkedHashMap<>();
+        gauges.put("activeTransactions", (long) currentTransactions.size());
+        gauges.put("bufferedOperations", (long) bufferedOperationCount);
+        gauges.put("blockedEnds", (long) blockedEndTransactionList.size());
+        gauges.put("waitForRelations", (long) waitForGraph.getEdgeCount());
+        for (int siteID : allSiteIDs) {
+            Site site = sites.get(siteID);
+            gauges.put("site." + siteID + ".locks", (long) site.getLockTableOfSite().getLockCount());
+            gauges.put("site." + siteID + ".versions", site.getVersionCount());
+            gauges.put("site." + siteID + ".longestVersionChain", (long) site.getLongestVersionChain());
+        }
+        return metrics.snapshot(time, gauges);
+    }
+
+
+    /**
+     *  The topN variables waited on the most and transactions waited for the most, with the lock waits at every site.
+     *  Like readCommand, it is called by the thread running the ticks.
+     */
+    public LockContentionReport getLockContentionReport(int topN) {
+        if (topN < 0) {
+            throw new IllegalArgumentException("The number of variables and transactions reported should not be negative.");
+        }
+        return lockContentionProfiler.report(time, topN);
     }
 
     public TransactionManager() {
+        this(ClusterConfiguration.defaultConfiguration());
+    }
+
+    public TransactionManager(ClusterConfiguration configuration) {
+        this(configuration, new NoOpEventListener());
+    }
+
+    public TransactionManager(ClusterConfiguration configuration, EngineEventListener listener) {
+        this.listener = listener;
+        this.siteTotalNumber = configuration.getSiteTotalNumber();
+        this.variableTotalNumber = configuration.getVariableTotalNumber();
         this.sites = new HashMap<>();
+        List<Integer> siteIDs = new ArrayList<>(siteTotalNumber);
+        for (int i = 1; i <= siteTotalNumber; i++) {
+            siteIDs.add(i);
+        }
+        this.allSiteIDs = Collections.unmodifiableList(siteIDs);
         this.time = 0;
         this.SiteTransactionHistory = new HashMap<>();
-        for (int i = 1; i <= DEFAULT_SITE_TOTAL_NUMBER; i++) {
-            sites.put(i, new Site(i));
-            this.SiteTransactionHistory.put(i, new ArrayList<>());
+        this.replicaDirectory = new ReplicaDirectory(configuration);
+        StorageConfiguration storage = configuration.getStorageConfiguration();
+        this.durable = storage.ifDurable();
+        if (durable && !storage.getLogDirectory().isDirectory() && !storage.getLogDirectory().mkdirs()) {
+            throw new IllegalArgumentException("Cannot create the log directory " + storage.getLogDirectory() + ".");
+        }
+        this.committedResults = new ArrayList<>();
+        this.checkpointInterval = storage.ifCheckpointing() ? storage.getCheckpointInterval() : 0;
+        this.siteEventBuffers = new HashMap<>();
+        for (int i = 1; i <= siteTotalNumber; i++) {
+            EngineEventListener siteListener = listener;
+            if (configuration.getSiteWorkerThreads() > 0) {
+                SiteEventBuffer eventBuffer = new SiteEventBuffer(listener);
+                siteEventBuffers.put(i, eventBuffer);
+                siteListener = eventBuffer;
+            }
+            Site site = new Site(i, siteListener, durable ? new WriteAheadLog(storage.getLogFile(i)) : null,
+                    storage.ifCheckpointing() ? new SiteCheckpoint(storage.getCheckpointFile(i)) : null);
+            for (int variableID : replicaDirectory.getVariablesOfSite(i)) {
+                site.hostVariable(variableID, replicaDirectory.ifReplicated(variableID));
+            }
+            // time goes on from the latest commit found in the logs, so new versions are always newer
+            this.time = Math.max(this.time, site.replayLog());
+            if (!site.getIfSiteWorking()) {
+                // it was down when the logs were last written
+                this.replicaDirectory.markSiteDown(i);
+            }
+            sites.put(i, site);
+            this.SiteTransactionHistory.put(i, new LinkedHashMap<>());
+        }
+        this.lastCheckpointTime = this.time;
+        this.catchUpBatchSize = configuration.getCatchUpBatchSize();
+        this.catchUpQueues = new TreeMap<>();
+        if (catchUpBatchSize > 0) {
+            // the replicated copies of an up site which were not caught up before the restart are caught up now
+            for (int siteID : allSiteIDs) {
+                queueCatchUp(siteID, true);
+            }
         }
+        this.isolation = configuration.getConcurrencyConfiguration().getIsolation();
+        this.snapshotConflictTracker = isolation == TypeOfIsolation.SerializableSnapshot ? new SnapshotConflictTracker() : null;
+        this.deadlockHandling = configuration.getConcurrencyConfiguration().getDeadlockHandling();
+        this.defaultLockWaitTimeout = configuration.getConcurrencyConfiguration().getLockWaitTimeout();
+        this.lockWaitDeadlines = new PriorityQueue<>((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        this.maxDetectionInterval = configuration.getConcurrencyConfiguration().getMaxDetectionInterval();
+        this.detectionInterval = 1;
+        this.ticksSinceDetection = 0;
+        this.newRelationCountAtLastCheck = -1;
+        this.metrics = new EngineMetrics();
+        this.lockContentionProfiler = new LockContentionProfiler(siteTotalNumber);
         this.abortedTransactions = new HashSet<>();
         this.committedTransactions = new HashSet<>();
         this.currentTransactions = new HashMap<>();
-        this.bufferedWaitList = new ArrayList<>();
-        this.waitForList = new ArrayList<>();
+        this.waitQueues = new HashMap<>();
+        this.bufferedOperationsOfTransaction = new HashMap<>();
+        this.wokenVariables = new HashSet<>();
+        this.bufferedOperationCount = 0;
+        this.bufferedSequence = 0;
+        this.waitForGraph = new WaitForGraph();
         this.toBeAbortedList = new HashSet<>();
+        this.activeSnapshotStartTimes = new TreeMap<>();
+        this.tickOpen = false;
+        this.endTransactionList = new ArrayList<>();
+        this.endResults = new ArrayList<>();
+        this.blockedEndTransactionList = new ArrayList<>();
+        this.blockedEndResults = new ArrayList<>();
+        this.siteExecutor = configuration.getSiteWorkerThreads() == 0 ? null
+                : Executors.newFixedThreadPool(configuration.getSiteWorkerThreads(), runnable -> {
+                    Thread thread = new Thread(runnable, "site-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+
+    /**
+     *  Stop the site worker threads, if any, close the logs and write out everything reported
+     */
+    public void shutdown() {
+        for (Site site : sites.values()) {
+            site.closeLog();
+        }
+        if (siteExecutor != null) {
+            siteExecutor.shutdown();
+        }
+        listener.flush();
+    }
+
+
+    /**
+     *  Group commit: every site forces the writes committed in this tick to disk once,
+     *  then the clients of these commits are told
+     */
+    private void syncLogs() {
+        if (!durable) {
+            return;
+        }
+        forEachSite(site -> {
+            site.syncLog();
+            return null;
+        });
+        for (CompletableFuture<OperationResult> result : committedResults) {
+            result.complete(new OperationResult(TypeOfResult.Committed, 0, time));
+        }
+        committedResults.clear();
+    }
+
+
+    /**
+     *  Every checkpointInterval ticks, every site takes a checkpoint and empties its log,
+     *  so what is replayed when starting again is bounded by the interval
+     */
+    private void takeCheckpointsIfDue() {
+        if (checkpointInterval == 0 || time - lastCheckpointTime < checkpointInterval) {
+            return;
+        }
+        forEachSite(site -> {
+            site.takeCheckpoint(time);
+            return null;
+        });
+        lastCheckpointTime = time;
     }
 
 
+    /**
+     *  Report an event happening at the current time
+     */
+    private void report(EventType type, int transactionID, int variableID, int siteID, int value, int otherTransactionID) {
+        listener.onEvent(type, transactionID, variableID, siteID, value, time, otherTransactionID);
+    }
+
+
+    /**
+     *  Run one line of text commands separated by ";" as one tick
+     */
     public void readCommand(String commandLine) {
         /**
-         *  1. process those buffered operations
+         *  1. process those buffered operations which might make progress now
          *  2. process commands in this line
          *  3. check deadlock
          */
-        this.time++;    // next tick
-        System.out.println("\n" + "[New Round] Time " + time);
-
-        List<BufferedOperation> oldBufferedWaitList = bufferedWaitList; //a copy of the old buffered wait list
-        bufferedWaitList = new ArrayList<>();   // recreate the buffered wait list
-        waitForList = new ArrayList<>();    // recreate the wait for list
-
-        // processing buffered operations before reading in the next line of commands
-        if (oldBufferedWaitList.size() != 0) {
-            //System.out.println("[Report] The size of the buffered wait list is " + oldBufferedWaitList.size() + " at the end of time " + (time - 1) +".");
+        // the whole line is parsed first, so a command which cannot be parsed leaves no half-run tick behind
+        List<ParsedCommand> commands = parseCommandLine(commandLine);
+        openTick();
+        try {
+            for (ParsedCommand command : commands) {
+                listener.onCommand(command.text);
+                dispatchCommand(command.type, command.first, command.second, command.third);
+            }
+        } finally {
+            closeTick();
+        }
+    }
 
-            // processing buffered operations according to the sequence of buffered time
-            Collections.sort(oldBufferedWaitList, new BufferedOperationComparator());
-            oldBufferedWaitList.forEach(this::processThisBufferedOperation);
 
-            //System.out.println("[Report] The size of the buffered wait list is " + bufferedWaitList.size() + " at time " + time +" after processing all buffered operations.");
+    /**
+     *  one command of a line of text commands, with its type and numbers(see TypeOfCommand) and its text for the echo
+     */
+    static final class ParsedCommand {
+        private final TypeOfCommand type;
+        private final int first;
+        private final int second;
+        private final int third;
+        private final String text;
+
+        private ParsedCommand(TypeOfCommand type, int first, int second, int third, String text) {
+            this.type = type;
+            this.first = first;
+            this.second = second;
+            this.third = third;
+            this.text = text;
         }
+    }
+
 
-        // process new read in command line
+    /**
+     *  Parse a line of text commands separated by ";", throw IllegalArgumentException if any of them cannot be parsed.
+     *  Anything which is not a command of the grammar is Unknown, which is echoed and otherwise ignored.
+     */
+    static List<ParsedCommand> parseCommandLine(String commandLine) {
         String[] operations = commandLine.split(";");
-        ArrayList<Integer> endTransactionList = new ArrayList<>();
+        List<ParsedCommand> commands = new ArrayList<>(operations.length);
         for (String opRaw : operations) {
             String op = opRaw.trim();
-            System.out.println("\n" + "[New Command] " + op);
-            if (op.startsWith("begin(")) {
-                begin(Integer.parseInt(op.substring(7, op.length() - 1)), TypeOfTransaction.Read_Write);
-            } else if (op.startsWith("beginRO(")) {
-                begin(Integer.parseInt(op.substring(9, op.length() - 1)), TypeOfTransaction.Read_Only);
-            } else if (op.startsWith("R(")) {
-                String[] t = op.substring(2, op.length() - 1).split(",");
-                readVariableValue(Integer.parseInt(t[0].substring(1)), Integer.parseInt(t[1].substring(t[1].indexOf("x") + 1)));
-            } else if (op.startsWith("W(")) {
-                String[] t = op.substring(2, op.length() - 1).split(",");
-                writeVariableValue(Integer.parseInt(t[0].substring(1)), Integer.parseInt(t[1].substring(t[1].indexOf("x") + 1)), Integer.valueOf(t[2].trim()), time);
-            } else if (op.startsWith("dump()")) {
+            try {
+                if (op.startsWith("begin(")) {
+                    commands.add(new ParsedCommand(TypeOfCommand.Begin, Integer.parseInt(op.substring(7, op.length() - 1)), 0, 0, op));
+                } else if (op.startsWith("beginRO(")) {
+                    commands.add(new ParsedCommand(TypeOfCommand.BeginReadOnly, Integer.parseInt(op.substring(9, op.length() - 1)), 0, 0, op));
+                } else if (op.startsWith("R(")) {
+                    String[] t = op.substring(2, op.length() - 1).split(",");
+                    commands.add(new ParsedCommand(TypeOfCommand.Read, Integer.parseInt(t[0].substring(1)), Integer.parseInt(t[1].substring(t[1].indexOf("x") + 1)), 0, op));
+                } else if (op.startsWith("W(")) {
+                    String[] t = op.substring(2, op.length() - 1).split(",");
+                    commands.add(new ParsedCommand(TypeOfCommand.Write, Integer.parseInt(t[0].substring(1)), Integer.parseInt(t[1].substring(t[1].indexOf("x") + 1)), Integer.parseInt(t[2].trim()), op));
+                } else if (op.startsWith("dump()")) {
+                    commands.add(new ParsedCommand(TypeOfCommand.Dump, 0, 0, 0, op));
+                } else if (op.startsWith("dump(x")) {
+                    commands.add(new ParsedCommand(TypeOfCommand.DumpVariable, Integer.parseInt(op.substring(6, op.length() - 1)), 0, 0, op));
+                } else if (op.startsWith("dump(")) {
+                    commands.add(new ParsedCommand(TypeOfCommand.DumpSite, Integer.parseInt(op.substring(5, op.length() - 1)), 0, 0, op));
+                } else if (op.startsWith("end(")) {
+                    commands.add(new ParsedCommand(TypeOfCommand.End, Integer.parseInt(op.substring(5, op.length() - 1)), 0, 0, op));
+                } else if (op.startsWith("fail(")) {
+                    commands.add(new ParsedCommand(TypeOfCommand.Fail, Integer.parseInt(op.substring(5, op.length() - 1)), 0, 0, op));
+                } else if (op.startsWith("recover(")) {
+                    commands.add(new ParsedCommand(TypeOfCommand.Recover, Integer.parseInt(op.substring(8, op.length() - 1)), 0, 0, op));
+                } else {
+                    commands.add(new ParsedCommand(TypeOfCommand.Unknown, 0, 0, 0, op));
+                }
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Cannot parse the command " + op + ".", e);
+            }
+        }
+        return commands;
+    }
+
+
+    /**
+     *  Run one command already parsed into its type and numbers(see TypeOfCommand for which are used),
+     *  echoing its text to the listener like readCommand does.
+     *  It belongs to the open tick, so a line of commands is openTick, runCommand for each of them and closeTick.
+     *  Nothing is parsed or allocated here, so a parser reading large traces can feed the engine directly.
+     */
+    public void runCommand(TypeOfCommand type, int first, int second, int third, CharSequence command) {
+        if (!this.tickOpen) {
+            throw new IllegalStateException("No tick is open.");
+        }
+        listener.onCommand(command);
+        dispatchCommand(type, first, second, third);
+    }
+
+    /**
+     *  Start recording every command run from now on and the end of every tick into this op-log, null to stop.
+     *  The recorder is not closed here.
+     */
+    public void setOpLogRecorder(OpLogWriter recorder) {
+        this.opLogRecorder = recorder;
+    }
+
+    private void dispatchCommand(TypeOfCommand type, int first, int second, int third) {
+        if (opLogRecorder != null && type != TypeOfCommand.Unknown) {
+            opLogRecorder.write(type, first, second, third);
+        }
+        applyCommand(type, first, second, third);
+    }
+
+    private void applyCommand(TypeOfCommand type, int first, int second, int third) {
+        switch (type) {
+            case Begin:
+                if (third == 1) {
+                    begin(first, TypeOfTransaction.Read_Write, second);
+                } else {
+                    begin(first, TypeOfTransaction.Read_Write);
+                }
+                break;
+            case BeginReadOnly:
+                begin(first, TypeOfTransaction.Read_Only);
+                break;
+            case Read:
+                readVariableValue(first, second);
+                break;
+            case Write:
+                writeVariableValue(first, second, third, time);
+                break;
+            case End:
+                deferEndTransaction(first);
+                break;
+            case Fail:
+                failSite(first);
+                break;
+            case Recover:
+                recoverSite(first);
+                break;
+            case Dump:
                 dump();
-            } else if (op.startsWith("dump(x")) {
-                int index = Integer.parseInt(op.substring(6, op.length() - 1));
-                dumpVariable(index);
-            } else if (op.startsWith("dump(")) {
-                int index = Integer.parseInt(op.substring(5, op.length() - 1));
-                dump(index);
-            } else if (op.startsWith("end(")) {
-                endTransactionList.add(Integer.parseInt(op.substring(5, op.length() - 1)));
-            } else if (op.startsWith("fail(")) {
-                failSite(Integer.parseInt(op.substring(5, op.length() - 1)));
-            } else if (op.startsWith("recover(")) {
-                recoverSite(Integer.parseInt(op.substring(8, op.length() - 1)));
-            }
-        }
-
-        //printSiteTransactionHistory();
-        printToBeAbortedList();
-
-        this.toBeAbortedList.forEach(this::abort);
-        // reset to be aborted list before deadlock checking
-        this.toBeAbortedList = new HashSet<>();
+                break;
+            case DumpSite:
+                dump(first);
+                break;
+            case DumpVariable:
+                dumpVariable(first);
+                break;
+            default:
+                break;
+        }
+    }
+
+
+    /**
+     *  Start the next tick and retry the buffered operations which might make progress now.
+     *  Operations called through the client API between openTick and closeTick belong to this tick.
+     */
+    public void openTick() {
+        if (this.tickOpen) {
+            throw new IllegalStateException("Tick " + time + " is not closed yet.");
+        }
+        this.tickOpen = true;
+        this.time++;    // next tick
+        boolean opened = false;
+        try {
+            report(EventType.NewRound, 0, 0, 0, 0, 0);
+            catchUpRecoveredSites();
+
+            // processing woken buffered operations before reading in the next line of commands
+            // operations on variables where nothing has changed keep waiting in their queues untouched
+            List<BufferedOperation> wokenOperations = takeWokenBufferedOperations();
+            if (wokenOperations.size() != 0) {
+                // processing buffered operations according to the sequence of buffered time
+                Collections.sort(wokenOperations, new BufferedOperationComparator());
+                wokenOperations.forEach(this::processThisBufferedOperation);
+            }
+            opened = true;
+        } finally {
+            // a tick which failed to open is not left open, or no later tick could run
+            if (!opened) {
+                this.tickOpen = false;
+            }
+        }
+    }
+
 
-        endTransactionList.forEach(this::endTransaction);
-        if (waitForList.size() == 0) {
+    /**
+     *  Finish this tick: abort the transactions affected by failed sites, end the transactions asked to end
+     *  and break the deadlocks
+     */
+    public void closeTick() {
+        if (!this.tickOpen) {
+            throw new IllegalStateException("No tick is open.");
+        }
+        try {
+            if (opLogRecorder != null) {
+                opLogRecorder.endTick();
+            }
+            //printSiteTransactionHistory();
+            printToBeAbortedList();
+
+            this.toBeAbortedList.forEach(transactionID -> abort(transactionID, TypeOfAbortCause.SiteFailure));
+            // reset to be aborted list before deadlock checking
+            this.toBeAbortedList = new HashSet<>();
+
+            retryBlockedEnds();
+            for (int i = 0; i < endTransactionList.size(); i++) {
+                this.currentResult = endResults.get(i);
+                endTransaction(endTransactionList.get(i));
+                finishCurrentOperation();
+            }
+            if (snapshotConflictTracker != null) {
+                snapshotConflictTracker.prune(getSnapshotHorizon());
+            }
+            syncLogs();
+            takeCheckpointsIfDue();
+        } catch (RuntimeException e) {
+            // the ends of this tick not answered yet fail with it rather than wait forever
+            endResults.stream().filter(Objects::nonNull).forEach(result -> result.completeExceptionally(e));
+            throw e;
+        } finally {
+            // even when something above failed the tick is closed, so the next one can open
+            endTransactionList.clear();
+            endResults.clear();
+            this.tickOpen = false;
+        }
+
+        abortTimedOutLockWaits();
+        if (waitForGraph.isEmpty() || !ifDeadlockCheckDue()) {
             return;
         }
-        List<Integer> deadLockAbortTransactionIDList = deadLockRemoval(waitForList);
+        List<Integer> deadLockAbortTransactionIDList = deadLockRemoval();
+        metrics.recordDeadlockCheck(!deadLockAbortTransactionIDList.isEmpty());
 
         if (deadLockAbortTransactionIDList.size() == 0) {
-            System.out.println("[Report] No deadlock is found.");
+            report(EventType.NoDeadlockFound, 0, 0, 0, 0, 0);
+            this.newRelationCountAtLastCheck = waitForGraph.getNewRelationCount();
+            this.detectionInterval = Math.min(detectionInterval * 2, maxDetectionInterval);
+        } else {
+            this.detectionInterval = 1;
         }
 
         for (Integer abortID : deadLockAbortTransactionIDList) {
-            System.out.println("Transaction T" + abortID + " should be aborted to break the deadlocks");
+            report(EventType.DeadlockVictim, abortID, 0, 0, 0, 0);
         }
 
-        deadLockAbortTransactionIDList.forEach(this::abort);
+        deadLockAbortTransactionIDList.forEach(transactionID -> abort(transactionID, TypeOfAbortCause.Deadlock));
         //printSiteLockTable();
     }
 
 
+    /**
+     *  Put the blocked ends whose transactions have no waiting operations any more in front of the ends of this tick,
+     *  an aborted transaction has none either, so its end is answered too
+     */
+    private void retryBlockedEnds() {
+        List<Integer> readyTransactionList = new ArrayList<>();
+        List<CompletableFuture<OperationResult>> readyResults = new ArrayList<>();
+        int kept = 0;
+        for (int i = 0; i < blockedEndTransactionList.size(); i++) {
+            int transactionID = blockedEndTransactionList.get(i);
+            if (ifExistsBufferedOperation(transactionID)) {
+                blockedEndTransactionList.set(kept, transactionID);
+                blockedEndResults.set(kept, blockedEndResults.get(i));
+                kept++;
+            } else {
+                readyTransactionList.add(transactionID);
+                readyResults.add(blockedEndResults.get(i));
+            }
+        }
+        blockedEndTransactionList.subList(kept, blockedEndTransactionList.size()).clear();
+        blockedEndResults.subList(kept, blockedEndResults.size()).clear();
+        endTransactionList.addAll(0, readyTransactionList);
+        endResults.addAll(0, readyResults);
+    }
+
+
+    /**
+     *  Judge if the wait-for graph should be checked for deadlocks at the end of this tick.
+     *  With a detection interval above 1, it is not checked again while no new relation is added since the last check
+     *  found nothing, and otherwise only every detectionInterval ticks.
+     */
+    private boolean ifDeadlockCheckDue() {
+        if (maxDetectionInterval == 1) {
+            return true;
+        }
+        if (waitForGraph.getNewRelationCount() == newRelationCountAtLastCheck) {
+            return false;
+        }
+        this.ticksSinceDetection++;
+        if (ticksSinceDetection < detectionInterval) {
+            return false;
+        }
+        this.ticksSinceDetection = 0;
+        return true;
+    }
+
+
+    /**
+     *  Abort the transactions having an operation blocked by a lock for at least their lock wait timeout.
+     *  Only the deadlines passed are looked at, so nothing is done while no wait is that long.
+     */
+    private void abortTimedOutLockWaits() {
+        while (!lockWaitDeadlines.isEmpty() && lockWaitDeadlines.peek()[0] <= time) {
+            int transactionID = (int) lockWaitDeadlines.poll()[1];
+            Transaction transaction = this.currentTransactions.get(transactionID);
+            List<BufferedOperation> buffered = this.bufferedOperationsOfTransaction.get(transactionID);
+            if (transaction == null || buffered == null) {
+                continue;
+            }
+            for (BufferedOperation BO : buffered) {
+                if (BO.getTypeOfBufferedOperation() == TypeOfBufferedOperation.TransactionBlocked
+                        && BO.getBufferedTime() + transaction.getLockWaitTimeout() <= time) {
+                    listener.onEvent(EventType.LockWaitTimedOut, transactionID, BO.getVariableID(), 0, 0, BO.getBufferedTime(), 0);
+                    abort(transactionID, TypeOfAbortCause.LockWaitTimeout);
+                    break;
+                }
+            }
+        }
+    }
+
+
+    /**
+     *  Client API.
+     *  Every call below is one command. Called between openTick and closeTick it belongs to that tick,
+     *  otherwise it is run as a tick of its own.
+     *  The returned future is completed when the operation is done:
+     *  at once for most of them, at the end of the tick for end, and later for reads and writes that have to wait
+     *  and for the end of a transaction whose operations are still waiting, which commits or aborts once they are done.
+     *  Like readCommand, these are called by one thread at a time.
+     */
+    public CompletableFuture<OperationResult> beginReadWrite(int transactionID) {
+        return execute(EventType.CommandBegin, transactionID, 0, 0, 0, () -> dispatchCommand(TypeOfCommand.Begin, transactionID, 0, 0));
+    }
+
+    /**
+     *  begin a read-write transaction which is aborted once it waits for a lock for this many ticks
+     */
+    public CompletableFuture<OperationResult> beginReadWrite(int transactionID, int lockWaitTimeout) {
+        if (lockWaitTimeout < 0) {
+            throw new IllegalArgumentException("The lock wait timeout should not be negative.");
+        }
+        return execute(EventType.CommandBegin, transactionID, 0, 0, 0,
+                () -> dispatchCommand(TypeOfCommand.Begin, transactionID, lockWaitTimeout, 1));
+    }
+
+    public CompletableFuture<OperationResult> beginReadOnly(int transactionID) {
+        return execute(EventType.CommandBeginReadOnly, transactionID, 0, 0, 0, () -> dispatchCommand(TypeOfCommand.BeginReadOnly, transactionID, 0, 0));
+    }
+
+    public CompletableFuture<OperationResult> readValue(int transactionID, int variableID) {
+        return execute(EventType.CommandRead, transactionID, variableID, 0, 0, () -> dispatchCommand(TypeOfCommand.Read, transactionID, variableID, 0));
+    }
+
+    public CompletableFuture<OperationResult> writeValue(int transactionID, int variableID, int value) {
+        return execute(EventType.CommandWrite, transactionID, variableID, 0, value,
+                () -> dispatchCommand(TypeOfCommand.Write, transactionID, variableID, value));
+    }
+
+    /**
+     *  Run the reads and writes of one transaction together, in the order of their variables.
+     *  Before any of them runs, the write locks they need are taken one variable after another in that order,
+     *  up to the first read or write which would have to wait right now, so each write before it finds its locks held already
+     *  and no lock is taken up front on a variable after one the batch has to wait for.
+     *  The operations after a waiting one still run as usual and may take their locks while it waits,
+     *  so a batch is not kept out of deadlocks, which are dealt with like any others.
+     *  The returned future gives the results in the order the operations were added to the batch,
+     *  once all of them are done.
+     */
+    public CompletableFuture<List<OperationResult>> submitBatch(int transactionID, OperationBatch batch) {
+        boolean ownTick = !this.tickOpen;
+        if (ownTick) {
+            openTick();
+        }
+        List<CompletableFuture<OperationResult>> results = new ArrayList<>(Collections.nCopies(batch.size(), null));
+        try {
+            report(EventType.CommandBatch, transactionID, 0, 0, batch.size(), 0);
+            if (opLogRecorder != null) {
+                opLogRecorder.writeBatch(transactionID, batch);
+            }
+            int[] order = batch.getOrderByVariable();
+            lockWritesOfBatch(transactionID, batch, order);
+            for (int index : order) {
+                int variableID = batch.getVariableID(index);
+                CompletableFuture<OperationResult> result = new CompletableFuture<>();
+                results.set(index, result);
+                this.currentResult = result;
+                if (batch.getTypeOfOperation(index) == TypeOfOperation.OP_WRITE) {
+                    report(EventType.CommandWrite, transactionID, variableID, 0, batch.getValue(index), 0);
+                    applyCommand(TypeOfCommand.Write, transactionID, variableID, batch.getValue(index));
+                } else {
+                    report(EventType.CommandRead, transactionID, variableID, 0, 0, 0);
+                    applyCommand(TypeOfCommand.Read, transactionID, variableID, 0);
+                }
+                finishCurrentOperation();
+            }
+        } finally {
+            if (ownTick) {
+                closeTick();
+            }
+        }
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            List<OperationResult> list = new ArrayList<>(results.size());
+            for (CompletableFuture<OperationResult> result : results) {
+                list.add(result.join());
+            }
+            return list;
+        });
+    }
+
+
+    /**
+     *  Take the write locks of the batch at all up sites, one variable after another in the order of variables.
+     *  Stops at the first write whose variable is locked by another transaction, has operations waiting on it or has no up copy,
+     *  and at the first read which would have to wait, so no lock of a later variable is taken up front.
+     */
+    private void lockWritesOfBatch(int transactionID, OperationBatch batch, int[] order) {
+        Transaction transaction = this.currentTransactions.get(transactionID);
+        if (transaction == null || transaction.getTransactionType() != TypeOfTransaction.Read_Write) {
+            return;
+        }
+        int previousVariableID = 0;
+        for (int index : order) {
+            int variableID = batch.getVariableID(index);
+            if (batch.getTypeOfOperation(index) != TypeOfOperation.OP_WRITE) {
+                if (variableID != previousVariableID && ifReadWouldWait(transactionID, variableID)) {
+                    return;
+                }
+                continue;
+            }
+            if (variableID == previousVariableID) {
+                continue;
+            }
+            previousVariableID = variableID;
+            if (variableID < 1 || variableID > variableTotalNumber) {
+                return;
+            }
+            if (ifHoldsWriteLocksOnAllUpSites(transactionID, variableID)) {
+                continue;
+            }
+            if (!replicaDirectory.ifAnyReplicaUp(variableID)
+                    || findExistingConflictingAnyBufferedOperation(variableID).getIfExistsAnyConflictingBufferedOperations()
+                    || findConflictingLockHolderOnAllUpSites(transactionID, variableID) != 0) {
+                return;
+            }
+            getAllWriteLockedOnAllUpSitesByThisTransaction(transactionID, variableID);
+        }
+    }
+
+    /**
+     *  Judge if a read of this read-write transaction on this variable would have to wait right now.
+     *  A snapshot read waits only when no copy is up, a locking read also when a write is waiting on the variable,
+     *  no up copy is readable or another transaction holds a write lock on it.
+     */
+    private boolean ifReadWouldWait(int transactionID, int variableID) {
+        if (variableID < 1 || variableID > variableTotalNumber || !replicaDirectory.ifAnyReplicaUp(variableID)) {
+            return true;
+        }
+        if (isolation != TypeOfIsolation.Locking || ifHoldsWriteLocksOnAllUpSites(transactionID, variableID)) {
+            return false;
+        }
+        if (findExistingConflictingWritingBufferedOperation(variableID).getIfExistsAnyConflictingBufferedOperations()
+                || !findAllConflictingLockHoldersOnAllUpSites(transactionID, variableID, true).isEmpty()) {
+            return true;
+        }
+        for (int siteID : replicaDirectory.getReplicaSites(variableID)) {
+            if (replicaDirectory.ifSiteUp(siteID) && this.sites.get(siteID).ifThisVariableIsAvailable(variableID)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public CompletableFuture<OperationResult> end(int transactionID) {
+        return execute(EventType.CommandEnd, transactionID, 0, 0, 0, () -> dispatchCommand(TypeOfCommand.End, transactionID, 0, 0));
+    }
+
+    public CompletableFuture<OperationResult> fail(int siteID) {
+        return execute(EventType.CommandFail, 0, 0, siteID, 0, () -> dispatchCommand(TypeOfCommand.Fail, siteID, 0, 0));
+    }
+
+    public CompletableFuture<OperationResult> recover(int siteID) {
+        return execute(EventType.CommandRecover, 0, 0, siteID, 0, () -> dispatchCommand(TypeOfCommand.Recover, siteID, 0, 0));
+    }
+
+
+    /**
+     *  Run one command of the client API, in a tick of its own if no tick is open
+     */
+    private CompletableFuture<OperationResult> execute(EventType command, int transactionID, int variableID, int siteID, int value,
+                                                       Runnable operation) {
+        boolean ownTick = !this.tickOpen;
+        if (ownTick) {
+            openTick();
+        }
+        CompletableFuture<OperationResult> result = new CompletableFuture<>();
+        try {
+            report(command, transactionID, variableID, siteID, value, 0);
+            this.currentResult = result;
+            operation.run();
+            finishCurrentOperation();
+        } finally {
+            if (ownTick) {
+                closeTick();
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     *  Ends are done at the end of the tick, after all the other commands of this tick
+     */
+    private void deferEndTransaction(int transactionID) {
+        this.endTransactionList.add(transactionID);
+        this.endResults.add(this.currentResult);
+        this.currentResult = null;
+    }
+
+
+    /**
+     *  Complete the future of the operation being executed, if anyone is waiting for it
+     */
+    private void completeCurrentOperation(TypeOfResult resultType, int value) {
+        if (this.currentResult != null) {
+            this.currentResult.complete(new OperationResult(resultType, value, time));
+            this.currentResult = null;
+        }
+    }
+
+
+    /**
+     *  An operation which neither completed its future nor was buffered had nothing valid to do
+     */
+    private void finishCurrentOperation() {
+        completeCurrentOperation(TypeOfResult.Failure, 0);
+    }
+
+
     /**
      *  This function process one buffered operation by simply re-executing it.
      *  Buffered time is kept in order not to lose the priority info of this operation.
@@ -146,18 +855,43 @@ public class TransactionManager {
         //                      TypeOfTransaction typeOfTransaction, TypeOfOperation typeOfOperation,
         //                      int bufferedTime)
 
-        System.out.println("[Report] Now processing the operation buffered at time " + bo.getBufferedTime()
-                + " which is the " + bo.getTypeOfTransaction() + " transaction T"
-                + bo.getTransactionID() + " asking to " + bo.getTypeOfOperation()
-                + " on variable x" + bo.getVariableID() + " with value " + bo.getValue()
-                + " but previously blocked by Transaction T"
-                + bo.getPreviousWaitingTransactionID() + ".");
+        EventType retried;
+        if (bo.getTypeOfOperation() == TypeOfOperation.OP_WRITE) {
+            retried = EventType.WriteRetried;
+        } else if (bo.getTypeOfTransaction() == TypeOfTransaction.Read_Only) {
+            retried = EventType.ReadOnlyReadRetried;
+        } else {
+            retried = EventType.ReadRetried;
+        }
+        listener.onEvent(retried, bo.getTransactionID(), bo.getVariableID(), 0, bo.getValue(), bo.getBufferedTime(),
+                bo.getPreviousWaitingTransactionID());
+
+        if (!this.currentTransactions.containsKey(bo.getTransactionID())) {
+            // aborted by wait-die or wound-wait after this operation was taken out of its wait queue
+            metrics.recordBlock(time - bo.getBufferedTime());
+            recordLockWaitEnd(bo);
+            if (bo.getResult() != null) {
+                bo.getResult().complete(new OperationResult(TypeOfResult.Aborted, 0, time));
+            }
+            return;
+        }
 
+        // the client waiting for it keeps waiting if it is buffered again
+        this.currentResult = bo.getResult();
+        long sequenceBefore = this.bufferedSequence;
+        this.retriedOperation = bo;
         if (bo.getTypeOfOperation() == TypeOfOperation.OP_READ) {
             read(bo.getTransactionID(), bo.getVariableID(), bo.getTypeOfTransaction(), bo.getBufferedTime());
         } else {
             writeVariableValue(bo.getTransactionID(), bo.getVariableID(), bo.getValue(), bo.getBufferedTime());
         }
+        finishCurrentOperation();
+        this.retriedOperation = null;
+        // an operation buffered again is recorded once it is done, or dropped with its transaction
+        if (this.bufferedSequence == sequenceBefore) {
+            metrics.recordBlock(time - bo.getBufferedTime());
+            recordLockWaitEnd(bo);
+        }
     }
 
 
@@ -166,16 +900,27 @@ public class TransactionManager {
      *  Put successfully initiated transactions into current transaction hash map.
      */
     private void begin(int transactionID, TypeOfTransaction typeOfTransaction) {
+        begin(transactionID, typeOfTransaction, typeOfTransaction == TypeOfTransaction.Read_Write ? defaultLockWaitTimeout : 0);
+    }
+
+    private void begin(int transactionID, TypeOfTransaction typeOfTransaction, int lockWaitTimeout) {
         if (!currentTransactions.containsKey(transactionID)) {
-            Transaction newTransaction = new Transaction(transactionID, typeOfTransaction, time);
+            Transaction newTransaction = new Transaction(transactionID, typeOfTransaction, time, lockWaitTimeout);
             currentTransactions.put(transactionID, newTransaction);
+            if (ifReadsFromSnapshot(typeOfTransaction)) {
+                activeSnapshotStartTimes.merge(time, 1, Integer::sum);
+            }
+            if (snapshotConflictTracker != null && typeOfTransaction == TypeOfTransaction.Read_Write) {
+                snapshotConflictTracker.begin(transactionID, time);
+            }
             if (typeOfTransaction == TypeOfTransaction.Read_Only) {
-                System.out.println("[Success] Read-only transaction T" + transactionID + " initiated.");
+                report(EventType.ReadOnlyTransactionBegan, transactionID, 0, 0, 0, 0);
             } else {
-                System.out.println("[Success] Read-write transaction T" + transactionID + " initiated.");
+                report(EventType.ReadWriteTransactionBegan, transactionID, 0, 0, 0, 0);
             }
+            completeCurrentOperation(TypeOfResult.Success, 0);
         } else {
-            System.out.println("[Failure] Transaction T" + transactionID + " might be already in progress.");
+            report(EventType.BeginRejected, transactionID, 0, 0, 0, 0);
         }
     }
 
@@ -185,7 +930,7 @@ public class TransactionManager {
      *  Operation time is passed in order not to lose the priority of this operation
      */
     private void readVariableValue(int transactionID, int variable) {
-        if (currentTransactions.containsKey(transactionID) && variable >= 1 && variable <= DEFAULT_VARIABLE_TOTAL_NUMBER) {
+        if (currentTransactions.containsKey(transactionID) && variable >= 1 && variable <= variableTotalNumber) {
             Transaction t = currentTransactions.get(transactionID);
             if (t.getTransactionType() == TypeOfTransaction.Read_Only) {
                 read(transactionID, variable, TypeOfTransaction.Read_Only, time);
@@ -193,7 +938,7 @@ public class TransactionManager {
                 read(transactionID, variable, TypeOfTransaction.Read_Write, time);
             }
         } else {
-            System.out.println("[Failure] Please check if such transaction T" + transactionID + " has began or such variable x" + variable + " exists.");
+            report(EventType.ReadRejected, transactionID, variable, 0, 0, 0);
         }
     }
 
@@ -205,51 +950,37 @@ public class TransactionManager {
         // don't need to check the validity of transaction ID and variable ID
         //      since it is already done before calling this function
         Transaction transaction = this.currentTransactions.get(transactionID);
-        if (typeOfTransaction == TypeOfTransaction.Read_Only) {
-            for (int siteID = 1; siteID <= DEFAULT_SITE_TOTAL_NUMBER; siteID++) {
-                Site tempSite = sites.get(siteID);
-                // bypass the not working site
-                if (!tempSite.getIfSiteWorking()) {
-                    continue;
-                }
-                // get the variable list in this site
-                List<Variable> variablesInThisSite = tempSite.getALLVariables();
-                for (Variable var : variablesInThisSite) {
-                    // variable which is not available for read will be ignored
-                    if (var.getID() == variableID && var.isAvailableForReading()) {
-                        // parse the VariableHistory of this Variable and select the correct value to read
-                        List<VariableHistory> variableHistory = var.getVariableHistoryList();
-                        int maxTime = Integer.MIN_VALUE; //initial return time to be a invalid value first
-                        int maxIndex = -1;  //index of the variable history with the latest time
-                        for (int j = 0; j < variableHistory.size(); j++) {
-                            VariableHistory vHistoryTemp = variableHistory.get(j);
-                            // if this variable history has time greater than current recorded max time
-                            // and if this variable history has time before the start-time of this read-only transaction
-                            // then we should select this record as current optimal choice
-                            if (vHistoryTemp.getTime() > maxTime && vHistoryTemp.getTime() < transaction.getStartTime()) {
-                                maxIndex = j;
-                                maxTime = vHistoryTemp.getTime();
-                            }
-                        }
-                        if (maxIndex != -1) {
-                            // get read value from the chosen record in the variable's record history
-                            int readValue = variableHistory.get(maxIndex).getValue();
-                            System.out.println("[Success] The snapshot value of variable x" + variableID + " in Site " + siteID + " is " + readValue + ".");
-                            Operation op = new Operation(transactionID, TypeOfOperation.OP_READ, siteID, variableID, readValue, time);
-                            // put successful operation into SiteTransactionHistory record stored inside this Transaction Manager
-                            insertIntoSiteTransactionHistory(siteID, op);
-                            // put successful operation into operationHistory record stored inside every transaction
-                            transaction.addToOperationHistory(op);
-                            return;
-                        }
-                    }
+        if (typeOfTransaction == TypeOfTransaction.Read_Write && isolation != TypeOfIsolation.Locking) {
+            // snapshot isolation: no read lock is taken and nothing is waited for, except its own writes.
+            //      With no copy up there is nothing to read its own write from, so it waits like any read.
+            if (replicaDirectory.ifAnyReplicaUp(variableID) && ifHoldsWriteLocksOnAllUpSites(transactionID, variableID)) {
+                ReadReturn readReturn = readCurrentValueOfVariableFromOneUpSite(variableID);
+                report(EventType.ReadSucceeded, transactionID, variableID, readReturn.getSiteNumber(), readReturn.getReadValue(), 0);
+                completeCurrentOperation(TypeOfResult.Success, readReturn.getReadValue());
+                Operation op = new Operation(transactionID, TypeOfOperation.OP_READ, readReturn.getSiteNumber(), variableID, readReturn.getReadValue(), time);
+                insertIntoSiteTransactionHistory(readReturn.getSiteNumber(), op);
+                transaction.addToOperationHistory(op);
+                return;
+            }
+            if (readFromSnapshot(transaction, transactionID, variableID)) {
+                if (snapshotConflictTracker != null) {
+                    snapshotConflictTracker.recordRead(transactionID, variableID);
                 }
+                return;
+            }
+            insertIntoBufferedWaitList(new BufferedOperation(TypeOfBufferedOperation.VariableUnavailable, transactionID, transactionID, variableID, typeOfTransaction, TypeOfOperation.OP_READ, 0, opTime));
+            report(EventType.VariableUnavailableBuffered, transactionID, variableID, 0, 0, 0);
+            return;
+        }
+        if (typeOfTransaction == TypeOfTransaction.Read_Only) {
+            if (readFromSnapshot(transaction, transactionID, variableID)) {
+                return;
             }
             // The value of this variable could not be read from any up site. So this operation has to wait.
             // put this operation into buffered operation list
             // set value attribute of this buffered operation for read operation to be zero(don't care)
             insertIntoBufferedWaitList(new BufferedOperation(TypeOfBufferedOperation.VariableUnavailable, transactionID, transactionID, variableID, typeOfTransaction, TypeOfOperation.OP_READ, 0, opTime));
-            System.out.println("[Buffered] Variable x" + variableID + " is not available for read-only transaction T" + transactionID + " at this time.");
+            report(EventType.ReadOnlyReadBuffered, transactionID, variableID, 0, 0, 0);
         } else {
             // read-write transaction read variable value
 
@@ -261,20 +992,20 @@ public class TransactionManager {
                 int waitForTransactionID = queryReturn.getBufferedConflictingTransactionID();
                 insertIntoBufferedWaitList(new BufferedOperation(TypeOfBufferedOperation.TransactionBlocked, transactionID, waitForTransactionID, variableID, typeOfTransaction, TypeOfOperation.OP_READ, 0, opTime));
                 // put this wait-for relation in the wait for list
+                report(EventType.BlockedByBufferedOperation, transactionID, variableID, 0, 0, waitForTransactionID);
                 insertIntoWaitForRelation(new WaitFor(transactionID, waitForTransactionID, getTransactionStartTime(transactionID)));
-                System.out.println("[Buffered] Transaction T" + transactionID + " is blocked by Transaction T" + waitForTransactionID + " on Variable x" + variableID + " in the buffered operation list.");
                 return;
             }
 
             // if there is any up site available for reading this variable
             boolean canFindThisVariable = false;
-            for (int siteID = 1; siteID <= DEFAULT_SITE_TOTAL_NUMBER; siteID++) {
-                Site tempSite = this.sites.get(siteID);
-                if (!tempSite.getIfSiteWorking()) {
+            for (int siteID : replicaDirectory.getReplicaSites(variableID)) {
+                if (!replicaDirectory.ifSiteUp(siteID)) {
                     // ignore not working site
                     continue;
                 }
-                if (tempSite.ifContainsVariable(variableID) && tempSite.ifThisVariableIsAvailable(variableID)) {
+                Site tempSite = this.sites.get(siteID);
+                if (tempSite.ifThisVariableIsAvailable(variableID)) {
                     canFindThisVariable = true;
                     break;
                 }
@@ -285,20 +1016,17 @@ public class TransactionManager {
                 //      because this transaction is blocked due to variable unavailable, not because of can acquire the lock on that variable
                 //      so this field has not meaning when the TypeOfBufferedOperation is VariableUnavailable
                 insertIntoBufferedWaitList(new BufferedOperation(TypeOfBufferedOperation.VariableUnavailable, transactionID, transactionID, variableID, typeOfTransaction, TypeOfOperation.OP_READ, 0, opTime));
-                System.out.println("[Buffered] Variable x" + variableID + " is not available for read_write transaction T" + transactionID + " at this time.");
+                report(EventType.VariableUnavailableBuffered, transactionID, variableID, 0, 0, 0);
                 return;
             }
 
             // judge if all up site that has this variable all have a write lock hold by this transaction
             boolean ifAllHaveAWriteLock = true;
-            for (int siteID = 1; siteID <= DEFAULT_SITE_TOTAL_NUMBER; siteID++) {
-                Site tempSite = this.sites.get(siteID);
-                if (!tempSite.getIfSiteWorking()) {
-                    continue;
-                }
-                if (!tempSite.ifContainsVariable(variableID)) {
+            for (int siteID : replicaDirectory.getReplicaSites(variableID)) {
+                if (!replicaDirectory.ifSiteUp(siteID)) {
                     continue;
                 }
+                Site tempSite = this.sites.get(siteID);
                 LockTable tempLockTable = tempSite.getLockTableOfSite();
                 if (!tempLockTable.ifTransactionHasLockOnVariableInThisTable(variableID, transactionID, TypeOfLock.Write)) {
                     ifAllHaveAWriteLock = false;
@@ -315,8 +1043,8 @@ public class TransactionManager {
                 }
                 int readValue = readReturn.getReadValue();
                 int siteID = readReturn.getSiteNumber();
-                System.out.println("[Success] The value of variable x" + variableID
-                        + " read by Transaction T" + transactionID + " from Site " + siteID + " is " + readValue + ".");
+                report(EventType.ReadSucceeded, transactionID, variableID, siteID, readValue, 0);
+                completeCurrentOperation(TypeOfResult.Success, readValue);
                 // do not need to require for a read lock since a write lock is already got
                 Operation op = new Operation(transactionID, TypeOfOperation.OP_READ, siteID, variableID, readValue, time);
                 // insert this operation into site transaction history
@@ -346,8 +1074,8 @@ public class TransactionManager {
                 Operation op = new Operation(transactionID, TypeOfOperation.OP_READ, siteID, variableID, readValue, time);
                 insertIntoSiteTransactionHistory(siteID, op);
                 transaction.addToOperationHistory(op);
-                System.out.println("[Success] The value of variable x" + variableID
-                        + " read by Transaction T" + transactionID + " from Site " + siteID + " is " + readValue + ".");
+                report(EventType.ReadSucceeded, transactionID, variableID, siteID, readValue, 0);
+                completeCurrentOperation(TypeOfResult.Success, readValue);
                 return;
             }
 
@@ -355,11 +1083,47 @@ public class TransactionManager {
             ConflictingBufferedQueryReturn queryReturnNew = findExistingAnyConflictingWriteLockOnAllUpSites(transactionID, variableID);
             int blockedTransactionID = queryReturnNew.getBufferedConflictingTransactionID();
 
-            insertIntoBufferedWaitList(new BufferedOperation(TypeOfBufferedOperation.TransactionBlocked, transactionID, blockedTransactionID, variableID, typeOfTransaction, TypeOfOperation.OP_READ, 0, opTime));
+            BufferedOperation blockedRead = new BufferedOperation(TypeOfBufferedOperation.TransactionBlocked, transactionID, blockedTransactionID, variableID, typeOfTransaction, TypeOfOperation.OP_READ, 0, opTime);
+            blockedRead.setBlockingSiteID(queryReturnNew.getConflictingSiteID());
+            insertIntoBufferedWaitList(blockedRead);
             // put this wait-for relation in the wait for list
-            insertIntoWaitForRelation(new WaitFor(transactionID, blockedTransactionID, getTransactionStartTime(transactionID)));
-            System.out.println("[Buffered] R(T" + transactionID + ", x" + variableID + ") has to wait because it cannot acquire the read lock on that variable blocked by Transaction T" + blockedTransactionID +".");
+            report(EventType.ReadBlocked, transactionID, variableID, 0, 0, blockedTransactionID);
+            insertIntoWaitForRelation(new WaitFor(transactionID, blockedTransactionID, getTransactionStartTime(transactionID)),
+                    findAllConflictingLockHoldersOnAllUpSites(transactionID, variableID, true));
+        }
+    }
+
+
+    /**
+     *  Read the latest version committed before the start-time of this transaction from an up site.
+     *  Return false if no up site can give it, then the read has to wait.
+     */
+    private boolean readFromSnapshot(Transaction transaction, int transactionID, int variableID) {
+        for (int siteID : replicaDirectory.getReplicaSites(variableID)) {
+            // bypass the not working site
+            if (!replicaDirectory.ifSiteUp(siteID)) {
+                continue;
+            }
+            Site tempSite = this.sites.get(siteID);
+            // variable which is not available for read will be ignored
+            if (tempSite.ifThisVariableIsAvailable(variableID)) {
+                // binary search the version chain for the latest version committed before the start-time of this transaction
+                Integer snapshotValue = tempSite.readSnapshotValue(variableID, transaction.getStartTime());
+                if (snapshotValue != null) {
+                    // get read value from the chosen record in the variable's record history
+                    int readValue = snapshotValue;
+                    report(EventType.SnapshotRead, transactionID, variableID, siteID, readValue, 0);
+                    completeCurrentOperation(TypeOfResult.Success, readValue);
+                    Operation op = new Operation(transactionID, TypeOfOperation.OP_READ, siteID, variableID, readValue, time);
+                    // put successful operation into SiteTransactionHistory record stored inside this Transaction Manager
+                    insertIntoSiteTransactionHistory(siteID, op);
+                    // put successful operation into operationHistory record stored inside every transaction
+                    transaction.addToOperationHistory(op);
+                    return true;
+                }
+            }
         }
+        return false;
     }
 
 
@@ -367,23 +1131,165 @@ public class TransactionManager {
      *  Put successfully executed operation into site transaction history
      */
     private void insertIntoSiteTransactionHistory(int siteID, Operation op) {
-        this.SiteTransactionHistory.get(siteID).add(op);
+        this.SiteTransactionHistory.get(siteID).computeIfAbsent(op.getTransactionID(), k -> new ArrayList<>()).add(op);
+    }
+
+
+    /**
+     *  Put wait for relation into wait for relation list, when waiting for the one transaction it points to
+     */
+    private void insertIntoWaitForRelation(WaitFor waitFor) {
+        insertIntoWaitForRelation(waitFor, Collections.singletonList(waitFor.getTo()));
+    }
+
+
+    /**
+     *  Put wait for relation into wait for relation list, when waiting for all of these transactions.
+     *  With wait-die or wound-wait nothing is put, whether to wait or to abort is decided right here instead,
+     *  against every one of them, so no cycle can ever form.
+     */
+    private void insertIntoWaitForRelation(WaitFor waitFor, List<Integer> holdingIDs) {
+        if (deadlockHandling == TypeOfDeadlockHandling.Detection) {
+            // the buffered operation is retried against the one transaction of the relation, which removes it again
+            this.waitForGraph.addWaitFor(waitFor);
+            return;
+        }
+        int waitingID = waitFor.getFrom();
+        if (deadlockHandling == TypeOfDeadlockHandling.WaitDie) {
+            for (int holdingID : holdingIDs) {
+                if (this.currentTransactions.containsKey(holdingID) && !ifOlder(waitingID, holdingID)) {
+                    // its buffered operation goes away with it and the client waiting for it learns about the abort
+                    report(EventType.DiedInsteadOfWaiting, waitingID, 0, 0, 0, holdingID);
+                    abort(waitingID, TypeOfAbortCause.WaitDie);
+                    return;
+                }
+            }
+        } else if (deadlockHandling == TypeOfDeadlockHandling.WoundWait) {
+            for (int holdingID : holdingIDs) {
+                if (this.currentTransactions.containsKey(holdingID) && ifOlder(waitingID, holdingID)) {
+                    // the locks of the wounded transaction are released, so the waiting one is retried next tick
+                    report(EventType.WoundedByOlder, holdingID, 0, 0, 0, waitingID);
+                    abort(holdingID, TypeOfAbortCause.WoundWait);
+                }
+            }
+        }
+    }
+
+
+    /**
+     *  Judge if the first transaction started before the second one, the smaller ID is older if they started at the same time
+     */
+    private boolean ifOlder(int transactionID, int otherTransactionID) {
+        int startTime = getTransactionStartTime(transactionID);
+        int otherStartTime = getTransactionStartTime(otherTransactionID);
+        if (startTime != otherStartTime) {
+            return startTime < otherStartTime;
+        }
+        return transactionID < otherTransactionID;
+    }
+
+
+    /**
+     *  Put buffered operation at the tail of the wait queue of its variable.
+     *  A retried operation buffered again goes on with the lock wait it was in, so one blocked operation is one wait
+     *  however many times it is retried, otherwise a block by a lock starts a new wait.
+     */
+    private void insertIntoBufferedWaitList(BufferedOperation bufferedOperation) {
+        bufferedOperation.setSequence(bufferedSequence++);
+        bufferedOperation.setQueuedTime(time);
+        // the future of the operation being executed now waits in the queue together with it
+        bufferedOperation.setResult(this.currentResult);
+        this.currentResult = null;
+        if (this.retriedOperation != null) {
+            bufferedOperation.setLockWait(this.retriedOperation.getLockWait());
+            // handed on only once
+            this.retriedOperation = null;
+        }
+        if (bufferedOperation.getTypeOfBufferedOperation() == TypeOfBufferedOperation.TransactionBlocked) {
+            if (bufferedOperation.getLockWait() == null) {
+                bufferedOperation.setLockWait(bufferedOperation);
+                lockContentionProfiler.recordWaitStart(bufferedOperation.getVariableID(), bufferedOperation.getBlockingSiteID(),
+                        bufferedOperation.getPreviousWaitingTransactionID());
+            }
+            int lockWaitTimeout = this.currentTransactions.get(bufferedOperation.getTransactionID()).getLockWaitTimeout();
+            if (lockWaitTimeout > 0) {
+                this.lockWaitDeadlines.add(new long[] {bufferedOperation.getBufferedTime() + lockWaitTimeout, bufferedOperation.getTransactionID()});
+            }
+        }
+        this.waitQueues.computeIfAbsent(bufferedOperation.getVariableID(), k -> new ArrayDeque<>()).addLast(bufferedOperation);
+        this.bufferedOperationsOfTransaction.computeIfAbsent(bufferedOperation.getTransactionID(), k -> new ArrayList<>()).add(bufferedOperation);
+        this.bufferedOperationCount++;
+    }
+
+
+    /**
+     *  A buffered operation goes ahead or is dropped with its transaction,
+     *  the lock wait it is part of ends and all of its ticks are added to what started it
+     */
+    private void recordLockWaitEnd(BufferedOperation bufferedOperation) {
+        BufferedOperation lockWait = bufferedOperation.getLockWait();
+        if (lockWait == null) {
+            return;
+        }
+        lockContentionProfiler.recordWaitEnd(lockWait.getVariableID(), lockWait.getBlockingSiteID(),
+                lockWait.getPreviousWaitingTransactionID(), time - lockWait.getQueuedTime());
+    }
+
+
+    /**
+     *  Remember to retry the waiters of this variable at the start of next tick
+     */
+    private void wakeUpWaitersOnVariable(int variableID) {
+        if (this.waitQueues.containsKey(variableID)) {
+            this.wokenVariables.add(variableID);
+        }
+    }
+
+
+    /**
+     *  Take every operation out of the wait queues of the woken variables, together with its wait-for relation.
+     *  Whole queues are taken so that re-buffered operations keep their place ahead of new ones.
+     */
+    private List<BufferedOperation> takeWokenBufferedOperations() {
+        List<BufferedOperation> result = new ArrayList<>();
+        for (int variableID : this.wokenVariables) {
+            ArrayDeque<BufferedOperation> queue = this.waitQueues.remove(variableID);
+            if (queue == null) {
+                continue;
+            }
+            for (BufferedOperation BO : queue) {
+                removeFromBufferedOperationsOfTransaction(BO);
+                if (BO.getTypeOfBufferedOperation() == TypeOfBufferedOperation.TransactionBlocked) {
+                    removeWaitForRelation(BO.getTransactionID(), BO.getPreviousWaitingTransactionID());
+                }
+                result.add(BO);
+            }
+        }
+        this.wokenVariables.clear();
+        return result;
     }
 
 
     /**
-     *  Put wait for relation into wait for relation list
+     *  Forget this buffered operation in the index of its transaction
      */
-    private void insertIntoWaitForRelation(WaitFor waitFor) {
-        this.waitForList.add(waitFor);
+    private void removeFromBufferedOperationsOfTransaction(BufferedOperation bufferedOperation) {
+        List<BufferedOperation> list = this.bufferedOperationsOfTransaction.get(bufferedOperation.getTransactionID());
+        if (list != null) {
+            list.remove(bufferedOperation);
+            if (list.isEmpty()) {
+                this.bufferedOperationsOfTransaction.remove(bufferedOperation.getTransactionID());
+            }
+        }
+        this.bufferedOperationCount--;
     }
 
 
     /**
-     *  Put buffered operation into operation wait list
+     *  Remove one wait-for relation added for a buffered operation which is retried now
      */
-    private void insertIntoBufferedWaitList(BufferedOperation bufferedOperation) {
-        this.bufferedWaitList.add(bufferedOperation);
+    private void removeWaitForRelation(int from, int to) {
+        this.waitForGraph.removeWaitFor(from, to);
     }
 
 
@@ -392,10 +1298,12 @@ public class TransactionManager {
      *  Called by Read_Write Transaction when it wants to read some variables
      */
     private ConflictingBufferedQueryReturn findExistingConflictingWritingBufferedOperation(int variableID) {
-        // BufferedOperation(TypeOfBufferedOperation typeOfBufferedOperation, int transactionID, int variableID,
-        //                      TypeOfTransaction typeOfTransaction, TypeOfOperation typeOfOperation, int bufferedTime)
-        for (BufferedOperation BO : this.bufferedWaitList) {
-            if (BO.getVariableID() == variableID && BO.getTypeOfOperation() == TypeOfOperation.OP_WRITE) {
+        ArrayDeque<BufferedOperation> queue = this.waitQueues.get(variableID);
+        if (queue == null) {
+            return new ConflictingBufferedQueryReturn(false, -1);
+        }
+        for (BufferedOperation BO : queue) {
+            if (BO.getTypeOfOperation() == TypeOfOperation.OP_WRITE) {
                 return new ConflictingBufferedQueryReturn(true, BO.getTransactionID());
             }
         }
@@ -408,14 +1316,11 @@ public class TransactionManager {
      */
     private ReadReturn readCurrentValueOfVariableFromOneUpSite(int variableID) {
         //  ReadReturn(int siteNumber, int readValue)
-        for (int siteID = 1; siteID <= DEFAULT_SITE_TOTAL_NUMBER; siteID++) {
-            Site tempSite = this.sites.get(siteID);
-            if (!tempSite.getIfSiteWorking()) {
-                continue;
-            }
-            if (!tempSite.ifContainsVariable(variableID)) {
+        for (int siteID : replicaDirectory.getReplicaSites(variableID)) {
+            if (!replicaDirectory.ifSiteUp(siteID)) {
                 continue;
             }
+            Site tempSite = this.sites.get(siteID);
             int currentValueRead = tempSite.returnThisVariableCurrentValue(variableID);
             return new ReadReturn(siteID, currentValueRead);
         }
@@ -428,10 +1333,10 @@ public class TransactionManager {
      *      and see if there is any conflicting write lock
      */
     private boolean findIfExistsAnyConflictingWriteLockOnAllUpSites(int transactionID, int variableID) {
-        for (int siteID = 1; siteID <= DEFAULT_SITE_TOTAL_NUMBER; siteID++) {
+        for (int siteID : replicaDirectory.getReplicaSites(variableID)) {
             //System.out.println("Looking at site" + i + ":");
             Site tempSite = this.sites.get(siteID);
-            if (tempSite.getIfSiteWorking() && tempSite.ifContainsVariable(variableID)) {
+            if (replicaDirectory.ifSiteUp(siteID)) {
                 //System.out.println("Entering site" + siteID + ":");
                 // Get the list of all locks on the required variable
                 List<LockOnVariable> lockListOnThisVariable = tempSite.getLockTableOfSite().getAllLocksOnVariable(variableID);
@@ -452,23 +1357,23 @@ public class TransactionManager {
      */
     private void getOneReadLockedOnThisVariableInThisSiteByThisTransaction(int siteID, int transactionID, int variableID) {
         Site tempSite = this.sites.get(siteID);
-        if (tempSite.getIfSiteWorking() && tempSite.ifContainsVariable(variableID) && tempSite.ifThisVariableIsAvailable(variableID)) {
+        if (replicaDirectory.ifSiteUp(siteID) && tempSite.ifThisVariableIsAvailable(variableID)) {
             List<LockOnVariable> lockListOnThisVariable = tempSite.getLockTableOfSite().getAllLocksOnVariable(variableID);
             if (lockListOnThisVariable.size() == 0) {
                 tempSite.getLockTableOfSite().addLock(variableID, transactionID, TypeOfLock.Read);
-                System.out.println("A read lock added in site " + siteID
-                        + " by Transaction T" + transactionID + " on variable x" + variableID + "!");
+                this.currentTransactions.get(transactionID).addToLockSet(siteID, variableID, TypeOfLock.Read, time);
+                report(EventType.ReadLockGranted, transactionID, variableID, siteID, 0, 0);
             } else {
                 for (LockOnVariable lock : lockListOnThisVariable) {
                     if (lock.getTransactionID() == transactionID) {
-                        System.out.println("A " + lock.getLockType() + " lock in site " + siteID
-                                + " has already got by Transaction T" + transactionID + " on variable x" + variableID + "!");
+                        report(lock.getLockType() == TypeOfLock.Read ? EventType.ReadLockAlreadyHeld : EventType.WriteLockAlreadyHeld,
+                                transactionID, variableID, siteID, 0, 0);
                         return;
                     }
                 }
                 tempSite.getLockTableOfSite().addLock(variableID, transactionID, TypeOfLock.Read);
-                System.out.println("A read lock added in site " + siteID
-                        + " by Transaction T" + transactionID + " on variable x" + variableID + "!");
+                this.currentTransactions.get(transactionID).addToLockSet(siteID, variableID, TypeOfLock.Read, time);
+                report(EventType.ReadLockGranted, transactionID, variableID, siteID, 0, 0);
             }
         }
     }
@@ -481,16 +1386,16 @@ public class TransactionManager {
      *      ConflictingBufferedQueryReturn(boolean ifExistsAnyConflictingBufferedOperations, int bufferedConflictingTransactionID)
      */
     private ConflictingBufferedQueryReturn findExistingAnyConflictingWriteLockOnAllUpSites(int transactionID, int variableID) {
-        for (int siteID = 1; siteID <= DEFAULT_SITE_TOTAL_NUMBER; siteID++) {
+        for (int siteID : replicaDirectory.getReplicaSites(variableID)) {
             //System.out.println("Looking at site" + i + ":");
             Site tempSite = this.sites.get(siteID);
-            if (tempSite.getIfSiteWorking() && tempSite.ifContainsVariable(variableID)) {
+            if (replicaDirectory.ifSiteUp(siteID)) {
                 //System.out.println("Entering site" + i + ":");
                 List<LockOnVariable> lockListOnThisVariable = tempSite.getLockTableOfSite().getAllLocksOnVariable(variableID);
                 for (LockOnVariable lock : lockListOnThisVariable) {
                     if (lock.getVariableID() == variableID && lock.getTransactionID() != transactionID && lock.getLockType() != TypeOfLock.Read) {
-                        System.out.println("[Failure] Transaction T" + transactionID + " is blocked by Transaction T" + lock.getTransactionID() + " on Variable x" + variableID + ".");
-                        return new ConflictingBufferedQueryReturn(true, lock.getTransactionID());
+                        report(EventType.BlockedByLock, transactionID, variableID, 0, 0, lock.getTransactionID());
+                        return new ConflictingBufferedQueryReturn(true, lock.getTransactionID(), siteID);
                     }
                 }
             }
@@ -506,13 +1411,13 @@ public class TransactionManager {
 
         if (!currentTransactions.containsKey(transactionID)) {
             //check if this transaction alive or not
-            System.out.println("[Failure] This transaction may be aborted already or not initiated!");
+            report(EventType.WriteRejectedNoTransaction, transactionID, variableID, 0, 0, 0);
             return;
         }
 
         Transaction transaction = currentTransactions.get(transactionID);
         if (transaction.getTransactionType() != TypeOfTransaction.Read_Write) {
-            System.out.println("[Failure] Please make sure that this transaction is actually a READ_WRITE one!");
+            report(EventType.WriteRejectedReadOnly, transactionID, variableID, 0, 0, 0);
             return;
         }
 
@@ -524,30 +1429,19 @@ public class TransactionManager {
             int waitForTransactionID = queryReturn.getBufferedConflictingTransactionID();
             insertIntoBufferedWaitList(new BufferedOperation(TypeOfBufferedOperation.TransactionBlocked, transactionID, waitForTransactionID, variableID, TypeOfTransaction.Read_Write, TypeOfOperation.OP_WRITE, value, opTime));
             // put this wait-for relation in the wait for list
+            report(EventType.BlockedByBufferedOperation, transactionID, variableID, 0, 0, waitForTransactionID);
             insertIntoWaitForRelation(new WaitFor(transactionID, waitForTransactionID, getTransactionStartTime(transactionID)));
-            System.out.println("[Buffered] Transaction T" + transactionID + " is blocked by Transaction T" + waitForTransactionID + " on Variable x" + variableID + " in the buffered operation list.");
             return;
         }
 
         // if there is any up site available for writing this variable
-        boolean canFindThisVariable = false;
-        for (int siteID = 1; siteID <= DEFAULT_SITE_TOTAL_NUMBER; siteID++) {
-            Site tempSite = this.sites.get(siteID);
-            if (!tempSite.getIfSiteWorking()) {
-                continue;
-            }
-            if (tempSite.ifContainsVariable(variableID)) {
-                canFindThisVariable = true;
-                break;
-            }
-        }
-        if (!canFindThisVariable) {
+        if (!replicaDirectory.ifAnyReplicaUp(variableID)) {
             // cannot find any up sites that contains this variable
             // set previousWaitingTransactionID field to be the same as this transactionID
             //      because this transaction is blocked due to variable unavailable, not because of can acquire the lock on that variable
             //      so this field has not meaning when the TypeOfBufferedOperation is VariableUnavailable
             insertIntoBufferedWaitList(new BufferedOperation(TypeOfBufferedOperation.VariableUnavailable, transactionID, transactionID, variableID, TypeOfTransaction.Read_Write, TypeOfOperation.OP_WRITE, value, opTime));
-            System.out.println("[Buffered] Variable x" + variableID + " is not available for read_write transaction T" + transactionID + " at this time.");
+            report(EventType.VariableUnavailableBuffered, transactionID, variableID, 0, 0, 0);
             return;
         }
 
@@ -555,14 +1449,11 @@ public class TransactionManager {
         // if does, then it can write to variables
         // otherwise, it's not the right time to write to variables
         boolean ifAllHaveAWriteLock = true;
-        for (int siteID = 1; siteID <= DEFAULT_SITE_TOTAL_NUMBER; siteID++) {
-            Site tempSite = this.sites.get(siteID);
-            if (!tempSite.getIfSiteWorking()) {
-                continue;
-            }
-            if (!tempSite.ifContainsVariable(variableID)) {
+        for (int siteID : replicaDirectory.getReplicaSites(variableID)) {
+            if (!replicaDirectory.ifSiteUp(siteID)) {
                 continue;
             }
+            Site tempSite = this.sites.get(siteID);
             LockTable tempLockTable = tempSite.getLockTableOfSite();
             if (!tempLockTable.ifTransactionHasLockOnVariableInThisTable(variableID,transactionID, TypeOfLock.Write)) {
                 ifAllHaveAWriteLock = false;
@@ -575,11 +1466,11 @@ public class TransactionManager {
             this.writeToAllUpSites(transactionID, variableID, value, opTime);
             int siteID = 0; //don't care
             Operation op = new Operation(transactionID, TypeOfOperation.OP_WRITE, siteID, variableID, value, time);
-            insertIntoSiteTransactionHistory(siteID, op);
+            // insertIntoSiteTransactionHistory(siteID, op);
+            // This step is done is the writeToAllUpSites function
             transaction.addToOperationHistory(op);
-            System.out.println("[Success] Variable x" + variableID
-                    + " on all up sites has their uncommitted value to be " + value
-                    + " by transaction T" + transactionID + " and it have already had all the locks.");
+            report(EventType.WriteSucceeded, transactionID, variableID, 0, value, 0);
+            completeCurrentOperation(TypeOfResult.Success, value);
         } else {
             // boolean ifThisTransactionCanHaveWriteLockOnAllUpSites = findIfExistsConflictLockOnAllUpSites(transactionID, variableID);
             // System.out.println("T" + transactionID + " & " + "x" + variableID);
@@ -592,9 +1483,8 @@ public class TransactionManager {
                 // insertIntoSiteTransactionHistory(siteID, op);
                 // This step is done is the writeToAllUpSites function
                 transaction.addToOperationHistory(op);
-                System.out.println("[Success] Variable x" + variableID
-                        + " on all up sites has their temp uncommitted value to be " + value
-                        + " by transaction T" + transactionID + " and it have already had all the locks.");
+                report(EventType.WriteSucceededAfterLocking, transactionID, variableID, 0, value, 0);
+                completeCurrentOperation(TypeOfResult.Success, value);
             }
             else {
                 //System.out.println("[Trace] !!!!!!!!!!!!!!!!!!");
@@ -604,10 +1494,13 @@ public class TransactionManager {
                 ConflictingBufferedQueryReturn queryReturnNew = findExistingAnyConflictingLockOnAllUpSites(transactionID, variableID);
                 int blockedTransactionID = queryReturnNew.getBufferedConflictingTransactionID();
 
-                insertIntoBufferedWaitList(new BufferedOperation(TypeOfBufferedOperation.TransactionBlocked, transactionID, blockedTransactionID, variableID, TypeOfTransaction.Read_Write, TypeOfOperation.OP_WRITE, value, opTime));
+                BufferedOperation blockedWrite = new BufferedOperation(TypeOfBufferedOperation.TransactionBlocked, transactionID, blockedTransactionID, variableID, TypeOfTransaction.Read_Write, TypeOfOperation.OP_WRITE, value, opTime);
+                blockedWrite.setBlockingSiteID(queryReturnNew.getConflictingSiteID());
+                insertIntoBufferedWaitList(blockedWrite);
                 // put this wait-for relation in the wait for list
-                insertIntoWaitForRelation(new WaitFor(transactionID, blockedTransactionID, getTransactionStartTime(transactionID)));
-                System.out.println("[Buffered] W(T" + transactionID + ", x" + variableID + ", " + value + ") has to wait because it cannot acquire the write lock on that variable blocked by Transaction T" + blockedTransactionID +".");
+                report(EventType.WriteBlocked, transactionID, variableID, 0, value, blockedTransactionID);
+                insertIntoWaitForRelation(new WaitFor(transactionID, blockedTransactionID, getTransactionStartTime(transactionID)),
+                        findAllConflictingLockHoldersOnAllUpSites(transactionID, variableID, false));
             }
         }
     }
@@ -620,12 +1513,11 @@ public class TransactionManager {
      *  Called by Read_Write Transaction when it wants to write value to some variables
      */
     private ConflictingBufferedQueryReturn findExistingConflictingAnyBufferedOperation(int variableID) {
-        for (BufferedOperation BO : bufferedWaitList) {
-            if (BO.getVariableID() == variableID) {
-                return new ConflictingBufferedQueryReturn(true, BO.getTransactionID());
-            }
+        ArrayDeque<BufferedOperation> queue = this.waitQueues.get(variableID);
+        if (queue == null) {
+            return new ConflictingBufferedQueryReturn(false, -1);
         }
-        return new ConflictingBufferedQueryReturn(false, -1);
+        return new ConflictingBufferedQueryReturn(true, queue.peekFirst().getTransactionID());
     }
 
 
@@ -634,22 +1526,35 @@ public class TransactionManager {
      *  Called by Read_Write Transaction when it wants to write value to some variables
      */
     private boolean findIfExistsConflictLockOnAllUpSites(int transactionID, int variableID) {
+        int holderID = findConflictingLockHolderOnAllUpSites(transactionID, variableID);
+        if (holderID != 0) {
+            report(EventType.BlockedByLock, transactionID, variableID, 0, 0, holderID);
+            return true;
+        }
+        return false;
+    }
+
+
+    /**
+     *  return the transaction holding the first read or write lock of another transaction on this variable at any up site,
+     *  0 if there is none
+     */
+    private int findConflictingLockHolderOnAllUpSites(int transactionID, int variableID) {
         //find if exists any read or write lock hold by other transaction on this variable
-        for (int siteID = 1; siteID <= DEFAULT_SITE_TOTAL_NUMBER; siteID++) {
+        for (int siteID : replicaDirectory.getReplicaSites(variableID)) {
             //System.out.println("Looking at site" + i + ":");
             Site tempSite = this.sites.get(siteID);
-            if (tempSite.getIfSiteWorking() && tempSite.ifContainsVariable(variableID)) {
+            if (replicaDirectory.ifSiteUp(siteID)) {
                 //System.out.println("Entering site" + siteID + ":");
                 List<LockOnVariable> lockListOnThisVariable = tempSite.getLockTableOfSite().getAllLocksOnVariable(variableID);
                 for (LockOnVariable lock : lockListOnThisVariable) {
                     if (lock.getVariableID() == variableID && lock.getTransactionID() != transactionID) {
-                        System.out.println("[Failure] Transaction T" + transactionID + " is blocked by Transaction T" + lock.getTransactionID() + " on Variable x" + variableID + ".");
-                        return true;
+                        return lock.getTransactionID();
                     }
                 }
             }
         }
-        return false;
+        return 0;
     }
 
 
@@ -657,30 +1562,33 @@ public class TransactionManager {
      *  Get all variables get a write lock by this transaction
      */
     private void getAllWriteLockedOnLockableVariableAllUpSitesByThisTransaction(int transactionID, int variableID) {
-        for (int siteID = 1; siteID <= DEFAULT_SITE_TOTAL_NUMBER; siteID++) {
+        for (int siteID : replicaDirectory.getReplicaSites(variableID)) {
             Site tempSite = this.sites.get(siteID);
-            if (tempSite.getIfSiteWorking() && tempSite.ifContainsVariable(variableID)) {
+            if (replicaDirectory.ifSiteUp(siteID)) {
                 List<LockOnVariable> lockListOnThisVariable = tempSite.getLockTableOfSite().getAllLocksOnVariable(variableID);
                 if (lockListOnThisVariable.size() == 0) {
                     tempSite.getLockTableOfSite().addLock(variableID, transactionID, TypeOfLock.Write);
-                    System.out.println("[Write lock added] At Site " + siteID + ", a WRITE lock on Variable x" + variableID
-                            + " is added by Transaction T" + transactionID + ".");
+                    this.currentTransactions.get(transactionID).addToLockSet(siteID, variableID, TypeOfLock.Write, time);
+                    report(EventType.WriteLockGranted, transactionID, variableID, siteID, 0, 0);
                 } else {
                     boolean canGetAWriteLock = true;
                     for (LockOnVariable lock : lockListOnThisVariable) {
                         if ( lock.getTransactionID() != transactionID) {
-                            System.out.println("[Fail to add lock] At Site " + siteID + ", a WRITE lock on Variable x" + variableID
-                                    + " cannot be added by Transaction T" + transactionID + ".");
+                            report(EventType.WriteLockRefused, transactionID, variableID, siteID, 0, 0);
                             canGetAWriteLock = false;
                             break;
                         }
                     }
+                    if (!canGetAWriteLock && tempSite.getLockTableOfSite().ifTransactionHasLockOnVariableInThisTable(variableID, transactionID, TypeOfLock.Read)) {
+                        // its read lock is shared with another transaction, so it cannot become a write lock
+                        lockContentionProfiler.recordUpgradeConflict(variableID, siteID);
+                    }
                     if (canGetAWriteLock) {
                         LockOnVariable thisLock = lockListOnThisVariable.get(0);
                         if (thisLock.getLockType() == TypeOfLock.Read) {
                             tempSite.getLockTableOfSite().updateReadLockToWriteLock(variableID, transactionID);
-                            System.out.println("[Read lock upgraded] At Site " + siteID + ", a READ lock on Variable x" + variableID
-                                    + " is upgraded to a WRITE one by Transaction T" + transactionID + ".");
+                            this.currentTransactions.get(transactionID).addToLockSet(siteID, variableID, TypeOfLock.Write, time);
+                            report(EventType.ReadLockUpgraded, transactionID, variableID, siteID, 0, 0);
                         } else {
 //                            System.out.println("At Site " + siteID + ", a WRITE lock on Variable x" + variableID
 //                                    + " is already get by Transaction T" + transactionID + ".");
@@ -696,20 +1604,20 @@ public class TransactionManager {
      *  Get all variables which can have a write lock on to get a write lock by this transaction
      */
     private void getAllWriteLockedOnAllUpSitesByThisTransaction(int transactionID, int variableID) {
-        for (int siteID = 1; siteID <= DEFAULT_SITE_TOTAL_NUMBER; siteID++) {
+        for (int siteID : replicaDirectory.getReplicaSites(variableID)) {
             Site tempSite = this.sites.get(siteID);
-            if (tempSite.getIfSiteWorking() && tempSite.ifContainsVariable(variableID)) {
+            if (replicaDirectory.ifSiteUp(siteID)) {
                 List<LockOnVariable> lockListOnThisVariable = tempSite.getLockTableOfSite().getAllLocksOnVariable(variableID);
                 if (lockListOnThisVariable.size() == 0) {
                     tempSite.getLockTableOfSite().addLock(variableID, transactionID, TypeOfLock.Write);
-                    System.out.println("[Write lock added] At Site " + siteID + ", a WRITE lock on Variable x" + variableID
-                            + " is added by Transaction T" + transactionID + ".");
+                    this.currentTransactions.get(transactionID).addToLockSet(siteID, variableID, TypeOfLock.Write, time);
+                    report(EventType.WriteLockGranted, transactionID, variableID, siteID, 0, 0);
                 } else {
                     LockOnVariable thisLock = lockListOnThisVariable.get(0);
                     if (thisLock.getLockType() == TypeOfLock.Read) {
                         tempSite.getLockTableOfSite().updateReadLockToWriteLock(variableID, transactionID);
-                        System.out.println("[Read lock upgraded] At Site " + siteID + ", a READ lock on Variable x" + variableID
-                                + " is upgraded to a WRITE one by Transaction T" + transactionID + ".");
+                        this.currentTransactions.get(transactionID).addToLockSet(siteID, variableID, TypeOfLock.Write, time);
+                        report(EventType.ReadLockUpgraded, transactionID, variableID, siteID, 0, 0);
                     } else {
 //                        System.out.println("At Site " + siteID + ", a WRITE lock on Variable x" + variableID
 //                                + " is already get by Transaction T" + transactionID + ".");
@@ -724,14 +1632,60 @@ public class TransactionManager {
      *  write value to all required variables in any up sites
      */
     private void writeToAllUpSites(int transactionID, int variableID, int value, int opTime) {
-        for (int siteID = 1; siteID <= DEFAULT_SITE_TOTAL_NUMBER; siteID++) {
-            if (this.sites.get(siteID).getIfSiteWorking() && this.sites.get(siteID).ifContainsVariable(variableID)
-                    && this.sites.get(siteID).getLockTableOfSite().ifThisTransactionHasWriteLockInThisLockTable(transactionID)) {
-                this.sites.get(siteID).writeToVariableCurrValueInThisSite(variableID, value);
+        for (int siteID : replicaDirectory.getReplicaSites(variableID)) {
+            if (!replicaDirectory.ifSiteUp(siteID)) {
+                continue;
+            }
+            Site tempSite = this.sites.get(siteID);
+            if (tempSite.getLockTableOfSite().ifThisTransactionHasWriteLockInThisLockTable(transactionID)) {
+                this.currentTransactions.get(transactionID).getUndoBuffer().record(siteID, variableID,
+                        tempSite.returnThisVariableCurrentValue(variableID), tempSite.ifThisVariableIsAvailable(variableID), tempSite.getFailureCount());
+                tempSite.writeToVariableCurrValueInThisSite(transactionID, variableID, value);
+                // a replicated copy on a recovered site becomes readable after being written
+                wakeUpWaitersOnVariable(variableID);
                 Operation op = new Operation(transactionID, TypeOfOperation.OP_WRITE, siteID, variableID, value, opTime);
                 insertIntoSiteTransactionHistory(siteID, op);
             }
         }
+        if (snapshotConflictTracker != null) {
+            snapshotConflictTracker.recordWrite(transactionID, variableID);
+        }
+    }
+
+
+    /**
+     *  Judge if this transaction holds the write lock on this variable at every up site, i.e. it has written the variable
+     */
+    private boolean ifHoldsWriteLocksOnAllUpSites(int transactionID, int variableID) {
+        for (int siteID : replicaDirectory.getReplicaSites(variableID)) {
+            if (!replicaDirectory.ifSiteUp(siteID)) {
+                continue;
+            }
+            if (!this.sites.get(siteID).getLockTableOfSite().ifTransactionHasLockOnVariableInThisTable(variableID, transactionID, TypeOfLock.Write)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     *  return every other transaction holding a lock on this variable at any up site, only the write locks if onlyWriteLocks,
+     *  each once in the order they are found
+     */
+    private List<Integer> findAllConflictingLockHoldersOnAllUpSites(int transactionID, int variableID, boolean onlyWriteLocks) {
+        Set<Integer> holderIDs = new LinkedHashSet<>();
+        for (int siteID : replicaDirectory.getReplicaSites(variableID)) {
+            if (!replicaDirectory.ifSiteUp(siteID)) {
+                continue;
+            }
+            for (LockOnVariable lock : this.sites.get(siteID).getLockTableOfSite().getAllLocksOnVariable(variableID)) {
+                if (lock.getTransactionID() != transactionID && (!onlyWriteLocks || lock.getLockType() != TypeOfLock.Read)) {
+                    holderIDs.add(lock.getTransactionID());
+                }
+            }
+        }
+        return new ArrayList<>(holderIDs);
     }
 
 
@@ -740,17 +1694,16 @@ public class TransactionManager {
      *  Called by Read_Write Transaction when it wants to do write operations
      */
     private ConflictingBufferedQueryReturn findExistingAnyConflictingLockOnAllUpSites(int transactionID, int variableID) {
-        for (int siteID = 1; siteID <= DEFAULT_SITE_TOTAL_NUMBER; siteID++) {
+        for (int siteID : replicaDirectory.getReplicaSites(variableID)) {
             //System.out.println("Looking at site" + i + ":");
             Site tempSite = this.sites.get(siteID);
-            if (tempSite.getIfSiteWorking() && tempSite.ifContainsVariable(variableID)) {
+            if (replicaDirectory.ifSiteUp(siteID)) {
                 //System.out.println("Entering site" + i + ":");
                 List<LockOnVariable> lockListOnThisVariable = tempSite.getLockTableOfSite().getAllLocksOnVariable(variableID);
                 for (LockOnVariable lock : lockListOnThisVariable) {
                     if (lock.getVariableID() == variableID && lock.getTransactionID() != transactionID) {
-                        System.out.println("[Failure] Transaction T" + transactionID + " is blocked by Transaction T"
-                                + lock.getTransactionID() + " on Variable x" + variableID + " at Site " + siteID + ".");
-                        return new ConflictingBufferedQueryReturn(true, lock.getTransactionID());
+                        report(EventType.BlockedByLockAtSite, transactionID, variableID, siteID, 0, lock.getTransactionID());
+                        return new ConflictingBufferedQueryReturn(true, lock.getTransactionID(), siteID);
                     }
                 }
             }
@@ -763,9 +1716,8 @@ public class TransactionManager {
      *  Gives the committed values of all copies of all variables at all sties, sorted per site
      */
     private void dump() {
-        for (int siteID = 1; siteID <= DEFAULT_SITE_TOTAL_NUMBER; siteID++) {
-            System.out.println("At site " + siteID + ":");
-            System.out.println(sites.get(siteID).dumpOutput());//
+        for (int siteID = 1; siteID <= siteTotalNumber; siteID++) {
+            sites.get(siteID).dump();
         }
     }
 
@@ -775,8 +1727,7 @@ public class TransactionManager {
      */
     private void dump(int index) {
         if (sites.containsKey(index)) {
-            System.out.println("At site " + index + ":");
-            System.out.println(sites.get(index).dumpOutput());
+            sites.get(index).dump();
         } else {
             throw new IndexOutOfBoundsException();
         }
@@ -787,14 +1738,11 @@ public class TransactionManager {
      *  Gives the committed values of all copies of variable xj at all sties
      */
     private void dumpVariable(int index) {
-        for (int siteID = 1; siteID <= DEFAULT_SITE_TOTAL_NUMBER; siteID++) {
-            ArrayList<Variable> variableList = (ArrayList<Variable>) sites.get(siteID).getVariableList();
-            for (Variable variable : variableList) {
-                if (variable.getID() == index) {
-                    System.out.println("At site " + siteID + ":");
-                    System.out.println(variable.variableOutput());
-                }
-            }
+        if (index < 1 || index > variableTotalNumber) {
+            return;
+        }
+        for (int siteID : replicaDirectory.getReplicaSites(index)) {
+            sites.get(siteID).dumpVariable(index);
         }
     }
 
@@ -804,69 +1752,64 @@ public class TransactionManager {
      */
     private void endTransaction(int transactionID) {
 
-        System.out.println("[Report] Now analyzing whether Transaction T" + transactionID + " can commit or not.");
+        report(EventType.EndRequested, transactionID, 0, 0, 0, 0);
 
         if (hasAborted(transactionID)) {
-            System.out.println("[Aborted] This transaction T" + transactionID + " has already been aborted!");
+            report(EventType.AlreadyAborted, transactionID, 0, 0, 0, 0);
+            completeCurrentOperation(TypeOfResult.Aborted, 0);
             return;
         }
 
         if (!this.currentTransactions.containsKey(transactionID)) {
-            System.out.println("[Failure] No such Transaction T" + transactionID + " to end!");
+            report(EventType.EndRejected, transactionID, 0, 0, 0, 0);
             return;
         }
 
         Transaction transactionToBeEnded = this.currentTransactions.get(transactionID);
 
         // check if this transaction is blocked
-        if (bufferedWaitList != null && ifExistsBufferedOperation(transactionID)) {
-            System.out.println("[Blocked] This transaction T" + transactionID + " has been blocked! It cannot commit at this time.");
+        if (ifExistsBufferedOperation(transactionID)) {
+            report(EventType.CommitBlocked, transactionID, 0, 0, 0, 0);
+            // the end is kept and tried again once none of its operations is waiting
+            this.blockedEndTransactionList.add(transactionID);
+            this.blockedEndResults.add(this.currentResult);
+            this.currentResult = null;
             return;
         }
 
+        if (transactionToBeEnded.getTransactionType() == TypeOfTransaction.Read_Write && isolation != TypeOfIsolation.Locking) {
+            int conflictingVariableID = findVariableCommittedSince(transactionToBeEnded);
+            if (conflictingVariableID != 0) {
+                // first committer wins
+                report(EventType.SnapshotWriteConflict, transactionID, conflictingVariableID, 0, 0, 0);
+                abort(transactionID, TypeOfAbortCause.SnapshotWriteConflict);
+                completeCurrentOperation(TypeOfResult.Aborted, 0);
+                return;
+            }
+            if (snapshotConflictTracker != null && !snapshotConflictTracker.ifCanCommit(transactionID)) {
+                report(EventType.SerializationConflict, transactionID, 0, 0, 0, 0);
+                abort(transactionID, TypeOfAbortCause.SerializationConflict);
+                completeCurrentOperation(TypeOfResult.Aborted, 0);
+                return;
+            }
+        }
+
         if (transactionToBeEnded.getTransactionType() == TypeOfTransaction.Read_Write) {
             // If the transaction to be ended is a read_write one, then start to commit transaction
-            for (int siteID = 1; siteID <= DEFAULT_SITE_TOTAL_NUMBER; siteID++) {
-                Site tempSite = this.sites.get(siteID);
-                List<LockOnVariable> table = tempSite.getLockTableOfSite().getLockTable();
-                //indexList records the position of locks in this lock table list
-                List<LockOnVariable> indexList= new ArrayList<>();
-                for (int j = 0; j < table.size(); j++) {
-                    LockOnVariable lock = table.get(j);
-//                    String typeOfLock = (lock.getLockType() == TypeOfLock.Read) ? "Read" : "Write";
-//                    System.out.println("At site " + tempSite.getSiteID()
-//                            + ", Transaction T" + lock.getTransactionID()
-//                            + " holds a " + typeOfLock + " lock on variable x" + lock.getVariableID() + ".");
-
-                    if (lock.getTransactionID() != transactionID) {
-                        continue;
-                    }
-
-                    if (lock.getLockType() == TypeOfLock.Read) {
-//                        System.out.println("Starting to release read lock on variable x" + lock.getVariableID()
-//                                + " held by Transaction T" + lock.getTransactionID()
-//                                + " at Site " + tempSite.getSiteID() + "." );
-                        indexList.add(lock);
-                        continue;
-                    }
-
-                    if (lock.getLockType() == TypeOfLock.Write) {
-//                        System.out.println("Starting to release write lock on variable x" + lock.getVariableID()
-//                                + " held by Transaction T" + lock.getTransactionID()
-//                                + " at Site " + tempSite.getSiteID() + "." );
-                        tempSite.CommitTheWrite(lock, time);
-                        indexList.add(lock);
-                    }
+            int commitTime = time;
+            if (snapshotConflictTracker != null) {
+                snapshotConflictTracker.commit(transactionID, commitTime);
+            }
+            int snapshotHorizon = getSnapshotHorizon();
+            // only the sites this transaction holds locks at are visited, each commits its writes in one batch
+            List<Collection<LockOnVariable>> releasedLocks = forSites(transactionToBeEnded.getLockSet().keySet(), tempSite -> {
+                tempSite.commitWrites(transactionID, transactionToBeEnded.getWriteSetAtSite(tempSite.getSiteID()), commitTime, snapshotHorizon);
+                return tempSite.getLockTableOfSite().releaseAllLocksOfTransaction(transactionID);
+            });
+            for (Collection<LockOnVariable> locks : releasedLocks) {
+                for (LockOnVariable lock : locks) {
+                    wakeUpWaitersOnVariable(lock.getVariableID());
                 }
-
-                table.removeAll(indexList);
-//                Collections.sort(indexList);
-//
-//                // remove locks from this lock table
-//                for (int k = indexList.size() - 1; k >= 0; k--) {
-//                    tempSite.ReleaseThatLock(table.get(k));
-//                }
-
             }
         } else {
             // for read-only transaction, it can commit only when all sites it reads from are up
@@ -880,13 +1823,16 @@ public class TransactionManager {
                 }
             }
             if (!allSiteUp) {
-                System.out.println("[Waiting] This Read-only Transaction T" + transactionID + " cannot commit at this time because there exists some sites it reads from are not recovered from failure..");
+                report(EventType.ReadOnlyCommitWaiting, transactionID, 0, 0, 0, 0);
+                completeCurrentOperation(TypeOfResult.Waiting, 0);
                 return;
             }
         }
         // remove from wait for list
         clearAllRelatedWaitForList(transactionID);
 
+        metrics.recordCommit(time - transactionToBeEnded.getStartTime());
+        recordLockHoldTime(transactionToBeEnded);
         reportTransaction(transactionID);
         // add this transaction into committed transaction list
         addToCommittedTransaction(transactionID);
@@ -895,7 +1841,34 @@ public class TransactionManager {
         // remove this transaction records from all sites' transaction history
         removeFromAllRelatedSiteTransaction(transactionID);
 
-        System.out.println("[Committed] This transaction T" + transactionID + " has been committed!");
+        report(EventType.Committed, transactionID, 0, 0, 0, 0);
+        if (durable && this.currentResult != null) {
+            // the client learns about the commit after its writes are forced to disk at the end of this tick
+            this.committedResults.add(this.currentResult);
+            this.currentResult = null;
+        } else {
+            completeCurrentOperation(TypeOfResult.Committed, 0);
+        }
+    }
+
+
+    /**
+     *  Return a variable written by this transaction which some other transaction committed at or after its start-time,
+     *  0 if there is none
+     */
+    private int findVariableCommittedSince(Transaction transaction) {
+        for (Operation op : transaction.getOperationHistory()) {
+            if (op.getOperationType() != TypeOfOperation.OP_WRITE) {
+                continue;
+            }
+            int variableID = op.getVariableID();
+            for (int siteID : replicaDirectory.getReplicaSites(variableID)) {
+                if (this.sites.get(siteID).getLatestCommitTime(variableID) >= transaction.getStartTime()) {
+                    return variableID;
+                }
+            }
+        }
+        return 0;
     }
 
 
@@ -921,9 +1894,9 @@ public class TransactionManager {
     private void reportTransaction(int transactionID) {
         Transaction transaction = this.currentTransactions.get(transactionID);
         List<Operation> listHistory = transaction.getOperationHistory();
-        System.out.println("[Report] Now reporting all the execution records of Transaction T" + transactionID + ":");
+        report(EventType.ReportHeader, transactionID, 0, 0, 0, 0);
         if (listHistory.size() == 0) {
-            System.out.println("[Report] This Transaction T" + transactionID + " seems to have no actions.");
+            report(EventType.ReportEmpty, transactionID, 0, 0, 0, 0);
             return;
         }
 
@@ -931,14 +1904,11 @@ public class TransactionManager {
             // Operation(int transactionID, TypeOfOperation operationType,
             //  int siteID, int variableID, int value, int time)
             if (operation.getOperationType() == TypeOfOperation.OP_READ) {
-                System.out.println("Transaction T" + transactionID
-                        + " reads value of Variable x" + operation.getVariableID()
-                        + " in Site " + operation.getSiteID()
-                        + " and gets " + operation.getValue() + " at Time " + operation.getTime() + ".");
+                listener.onEvent(EventType.ReportRead, transactionID, operation.getVariableID(), operation.getSiteID(),
+                        operation.getValue(), operation.getTime(), 0);
             } else if (operation.getOperationType() == TypeOfOperation.OP_WRITE) {
-                System.out.println("Transaction T" + transactionID
-                        + " writes value " + operation.getValue() + " to Variable x" + operation.getVariableID()
-                        + " in all available Sites at Time " + operation.getTime() + ".");
+                listener.onEvent(EventType.ReportWrite, transactionID, operation.getVariableID(), operation.getSiteID(),
+                        operation.getValue(), operation.getTime(), 0);
             }
         }
         //System.out.println(" ");
@@ -949,15 +1919,7 @@ public class TransactionManager {
      *  Check if there exists any buffered operations in the buffered operation list
      */
     private boolean ifExistsBufferedOperation(int transactionID) {
-        if (bufferedWaitList == null) {
-            return false;
-        }
-        for (BufferedOperation BO : bufferedWaitList) {
-            if (BO.getTransactionID() == transactionID) {
-                return true;
-            }
-        }
-        return false;
+        return bufferedOperationsOfTransaction.containsKey(transactionID);
     }
 
 
@@ -966,16 +1928,29 @@ public class TransactionManager {
      */
     private void failSite(int siteID) {
         if (this.sites.containsKey(siteID) && this.sites.get(siteID).getIfSiteWorking()) {
-            System.out.println("[Down] Site " + siteID + " is now failed.");
+            report(EventType.SiteFailed, 0, 0, siteID, 0, 0);
             List<Integer> affectedTransactionList = outputAffectedTransactionList(siteID);
-            this.sites.get(siteID).failThisSite();
+            // every lock in this site is erased
+            LockTable lockTable = this.sites.get(siteID).getLockTableOfSite();
+            for (int tID : lockTable.getTransactionsHoldingLocks()) {
+                for (LockOnVariable lock : lockTable.getLocksHeldByTransaction(tID)) {
+                    wakeUpWaitersOnVariable(lock.getVariableID());
+                }
+            }
+            this.sites.get(siteID).failThisSite(time);
+            this.replicaDirectory.markSiteDown(siteID);
+            for (Transaction transaction : this.currentTransactions.values()) {
+                transaction.forgetLocksAtSite(siteID);
+            }
+            this.catchUpQueues.remove(siteID);
             // export all affected transaction id to the list of transactions to be aborted
             this.toBeAbortedList.addAll(affectedTransactionList);
             // reset Site History Record
             this.SiteTransactionHistory.remove(siteID);
-            this.SiteTransactionHistory.put(siteID, new ArrayList<>());
+            this.SiteTransactionHistory.put(siteID, new LinkedHashMap<>());
+            completeCurrentOperation(TypeOfResult.Success, 0);
         } else {
-            System.out.println("[Failure] Unable to fail this site. Maybe it is still down or not even exists!");
+            report(EventType.FailRejected, 0, 0, siteID, 0, 0);
         }
     }
 
@@ -986,32 +1961,27 @@ public class TransactionManager {
     private List<Integer> outputAffectedTransactionList(int siteID) {
 
         Site tempSite = this.sites.get(siteID);
-        List<LockOnVariable> lockTable = tempSite.getLockTableOfSite().getLockTable();
         Set<Integer> set = new HashSet<>();
         List<Integer> resultList = new ArrayList<>();
 
         // if transaction has locks on the variables in this site, it should be considered as affected
-        for (LockOnVariable lock : lockTable) {
-            int tID = lock.getTransactionID();
+        for (int tID : tempSite.getLockTableOfSite().getTransactionsHoldingLocks()) {
             if (!set.contains(tID)) {
                 set.add(tID);
-                System.out.println("Transaction T" + tID + " should be aborted!");
+                report(EventType.AffectedBySiteFailure, tID, 0, siteID, 0, 0);
                 resultList.add(tID);
             }
         }
 
-        List<Operation> tempList = this.SiteTransactionHistory.get(siteID);
-
-        // Operation(int transactionID, TypeOfOperation operationType,
-        //              int siteID, int variableID, int value, int time)
-        for (Operation o : tempList) {
-            int tID = o.getTransactionID();
-            if (ifThisTransactionIsReadOnly(tID)) {
+        // transactions which did something successfully at this site
+        for (int tID : this.SiteTransactionHistory.get(siteID).keySet()) {
+            // a transaction which has already finished cannot be affected any more
+            if (!this.currentTransactions.containsKey(tID) || ifThisTransactionIsReadOnly(tID)) {
                 continue;
             }
             if (!set.contains(tID)) {
                 set.add(tID);
-                System.out.println("Transaction T" + tID + " should be aborted!");
+                report(EventType.AffectedBySiteFailure, tID, 0, siteID, 0, 0);
                 resultList.add(tID);
             }
         }
@@ -1032,384 +2002,351 @@ public class TransactionManager {
      */
     private void recoverSite(int siteID) {
         if (this.sites.containsKey(siteID) && !this.sites.get(siteID).getIfSiteWorking()) {
-            this.sites.get(siteID).recoverThisSite();
+            this.sites.get(siteID).recoverThisSite(time);
+            this.replicaDirectory.markSiteUp(siteID);
+            // variables of this site can be written again, and the non-replicated ones can be read again
+            Site tempSite = this.sites.get(siteID);
+            for (int variableID : this.waitQueues.keySet()) {
+                if (tempSite.ifContainsVariable(variableID)) {
+                    this.wokenVariables.add(variableID);
+                }
+            }
+            if (catchUpBatchSize > 0) {
+                queueCatchUp(siteID, false);
+            }
+            completeCurrentOperation(TypeOfResult.Success, 0);
         } else {
-            System.out.println("[Failure] Unable to recover this site. Maybe it is still working or not even exists!");
+            report(EventType.RecoverRejected, 0, 0, siteID, 0, 0);
         }
     }
 
 
     /**
-     *  Abort chosen transaction
-     */
-    private void abort(int abortTransactionID) {
-//        private Map<Integer, Transaction> currentTransactions;
-//        private Set<Integer> abortedTransactions;
-//        public List<BufferedOperation> bufferedWaitList;
-//        private List<WaitFor> waitForList;
-        clearAllRelatedBufferedWaitList(abortTransactionID);
-        clearAllRelatedWaitForList(abortTransactionID);
-        cancelOffTotal(abortTransactionID);
-        addToAbortedTransaction(abortTransactionID);
-        removeFromCurrentTransaction(abortTransactionID);
-        removeFromAllRelatedSiteTransaction(abortTransactionID);
-    }
-
-
-    /**
-     *  Clear all related buffered operations when aborting transaction
+     *  Queue the replicated variables of an up site to be caught up, only the ones which cannot be read if onlyUnreadable
      */
-    private void clearAllRelatedBufferedWaitList(int abortTransactionID) {
-        //  List<BufferedOperation> bufferedWaitList;
-        //  BufferedOperation(TypeOfBufferedOperation typeOfBufferedOperation,
-        //                      int transactionID, int previousWaitingTransactionID,
-        //                      int variableID, TypeOfTransaction typeOfTransaction,
-        //                      TypeOfOperation typeOfOperation, int value, int bufferedTime)
-        List<BufferedOperation> found = new ArrayList<>();
-        for (BufferedOperation BO : this.bufferedWaitList) {
-            if (BO.getTransactionID() == abortTransactionID) {
-                found.add(BO);
+    private void queueCatchUp(int siteID, boolean onlyUnreadable) {
+        Site tempSite = this.sites.get(siteID);
+        if (!tempSite.getIfSiteWorking()) {
+            return;
+        }
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int variableID : this.replicaDirectory.getVariablesOfSite(siteID)) {
+            if (this.replicaDirectory.ifReplicated(variableID) && !(onlyUnreadable && tempSite.ifThisVariableIsAvailable(variableID))) {
+                queue.addLast(variableID);
             }
         }
-        this.bufferedWaitList.removeAll(found);
+        if (!queue.isEmpty()) {
+            this.catchUpQueues.put(siteID, queue);
+        }
     }
 
 
     /**
-     *  Clear all related wait-for relations when aborting transaction
+     *  Catch up to catchUpBatchSize replicated variables of every recovered site with an up replica.
+     *  A variable write locked at any up site is skipped for now, since the write would not reach the recovered copy
+     *  which was down when the lock was granted. Otherwise the committed value the up replica has is also the latest one,
+     *  so the copy can be read once it has it. No lock is taken, so no transaction ever waits for a catch-up.
+     *  The waiters of a caught up variable are retried in this tick.
      */
-    private void clearAllRelatedWaitForList(int abortTransactionID) {
-        //  List<WaitFor> waitForList;
-        //  WaitFor(int from, int to, int time)
-        List<WaitFor> found = new ArrayList<>();
-        for (WaitFor WF : this.waitForList) {
-            if (WF.getFrom() == abortTransactionID
-                    || WF.getTo() == abortTransactionID) {
-                found.add(WF);
+    private void catchUpRecoveredSites() {
+        if (this.catchUpQueues.isEmpty()) {
+            return;
+        }
+        Iterator<Map.Entry<Integer, ArrayDeque<Integer>>> iterator = this.catchUpQueues.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, ArrayDeque<Integer>> entry = iterator.next();
+            Site tempSite = this.sites.get(entry.getKey());
+            ArrayDeque<Integer> queue = entry.getValue();
+            int tried = 0;
+            int limit = Math.min(catchUpBatchSize, queue.size());
+            while (tried < limit) {
+                int variableID = queue.pollFirst();
+                tried++;
+                if (tempSite.ifThisVariableIsAvailable(variableID)) {
+                    // a write committed since the recovery made it readable
+                    continue;
+                }
+                Site source = findCatchUpSource(variableID, tempSite.getSiteID());
+                if (source == null) {
+                    queue.addLast(variableID);
+                    continue;
+                }
+                int[] versions = source.getVersionsCommittedAfter(variableID, tempSite.getLatestCommitTime(variableID));
+                if (versions.length == 0) {
+                    versions = new int[] {source.getLatestCommitTime(variableID), source.returnThisVariableValue(variableID)};
+                }
+                if (tempSite.catchUpVariable(variableID, versions, time)) {
+                    wakeUpWaitersOnVariable(variableID);
+                }
+            }
+            if (queue.isEmpty()) {
+                iterator.remove();
             }
         }
-        this.waitForList.removeAll(found);
     }
 
 
     /**
-     *  Row back aborted transactions
+     *  Return an up site whose copy of this variable can be read, null if there is none
+     *  or some up site has a write lock on it
      */
-    private void cancelOffTotal(int abortTransactionID) {
-        //Transaction transaction = currentTransactions.get(abortTransactionID);
-        //List<Operation> opList = transaction.getOperationHistory();
-        //for (Operation o : opList) {}
-        for (int siteID = 1; siteID <= DEFAULT_SITE_TOTAL_NUMBER; siteID++) {
+    private Site findCatchUpSource(int variableID, int recoveredSiteID) {
+        Site source = null;
+        for (int siteID : this.replicaDirectory.getReplicaSites(variableID)) {
             Site tempSite = this.sites.get(siteID);
             if (!tempSite.getIfSiteWorking()) {
                 continue;
             }
-            List<LockOnVariable> table = tempSite.getLockTableOfSite().getLockTable();
-
-            List<LockOnVariable> indexList= new ArrayList<>();
-            for (int j = 0; j < table.size(); j++) {
-                LockOnVariable lock = table.get(j);
-                //String typeOfLock = (lock.getLockType() == TypeOfLock.Read) ? "Read" : "Write";
-
-                if (lock.getTransactionID() != abortTransactionID) {
-                    continue;
-                }
-
-//                System.out.println("At site " + tempSite.getSiteID()
-//                        + ", Transaction T" + lock.getTransactionID()
-//                        + " holds a " + typeOfLock + " lock on variable x" + lock.getVariableID() + ".");
-
-                if (lock.getLockType() == TypeOfLock.Read) {
-                    indexList.add(lock);
-                    continue;
-                }
-
-                if (lock.getLockType() == TypeOfLock.Write) {
-//                    System.out.println("Starting to release write lock on variable x" + lock.getVariableID()
-//                            + " held by Transaction T" + lock.getTransactionID() + "." );
-                    //tempSite.ReverseTheWrite(lock);
-                    indexList.add(lock);
-                }
+            if (tempSite.getLockTableOfSite().ifVariableWriteLocked(variableID)) {
+                return null;
+            }
+            if (source == null && siteID != recoveredSiteID && tempSite.ifThisVariableIsAvailable(variableID)) {
+                source = tempSite;
             }
-
-            table.removeAll(indexList);
-//            Collections.sort(indexList);
-//
-//            for (int k = indexList.size() - 1; k >= 0; k--) {
-//                tempSite.ReleaseThatLock(table.get(k));
-//            }
         }
+        return source;
     }
 
 
     /**
-     *  Add transaction ID to aborted transaction list
+     *  Abort chosen transaction for this cause
      */
-    private void addToAbortedTransaction(int abortTransactionID) {
-        this.abortedTransactions.add(abortTransactionID);
+    private void abort(int abortTransactionID, TypeOfAbortCause cause) {
+//        private Map<Integer, Transaction> currentTransactions;
+//        private Set<Integer> abortedTransactions;
+//        public List<BufferedOperation> bufferedWaitList;
+//        private WaitForGraph waitForGraph;
+        report(EventType.Aborted, abortTransactionID, 0, 0, 0, 0);
+        metrics.recordAbort(cause);
+        Transaction transaction = this.currentTransactions.get(abortTransactionID);
+        if (transaction != null) {
+            recordLockHoldTime(transaction);
+        }
+        if (snapshotConflictTracker != null) {
+            snapshotConflictTracker.remove(abortTransactionID);
+        }
+        clearAllRelatedBufferedWaitList(abortTransactionID);
+        clearAllRelatedWaitForList(abortTransactionID);
+        rollBackWrites(abortTransactionID);
+        cancelOffTotal(abortTransactionID);
+        addToAbortedTransaction(abortTransactionID);
+        removeFromCurrentTransaction(abortTransactionID);
+        removeFromAllRelatedSiteTransaction(abortTransactionID);
     }
 
 
     /**
-     *  Remove transaction ID from current transaction list
+     *  A transaction which got any lock held its locks from its first lock until now
      */
-    private void removeFromCurrentTransaction(int abortTransactionID) {
-        this.currentTransactions.remove(abortTransactionID);
+    private void recordLockHoldTime(Transaction transaction) {
+        if (transaction.getFirstLockTime() != -1) {
+            metrics.recordLockHold(time - transaction.getFirstLockTime());
+        }
     }
 
 
     /**
-     *  Remove all related transaction records in all the sites
+     *  Clear all related buffered operations when aborting transaction
      */
-    private void removeFromAllRelatedSiteTransaction(int abortTransactionID) {
-        for (int siteID = 1; siteID < DEFAULT_SITE_TOTAL_NUMBER; siteID++) {
-            List<Operation> opList = this.SiteTransactionHistory.get(siteID);
-            List<Operation> filtered = new ArrayList<>();
-            for (Operation o : opList) {
-                if (o.getTransactionID() == abortTransactionID) {
-                    filtered.add(o);
-                }
+    private void clearAllRelatedBufferedWaitList(int abortTransactionID) {
+        List<BufferedOperation> found = this.bufferedOperationsOfTransaction.remove(abortTransactionID);
+        if (found == null) {
+            return;
+        }
+        for (BufferedOperation BO : found) {
+            ArrayDeque<BufferedOperation> queue = this.waitQueues.get(BO.getVariableID());
+            queue.remove(BO);
+            if (queue.isEmpty()) {
+                this.waitQueues.remove(BO.getVariableID());
             }
-            opList.removeAll(filtered);
+            this.bufferedOperationCount--;
+            metrics.recordBlock(time - BO.getBufferedTime());
+            recordLockWaitEnd(BO);
+            if (BO.getResult() != null) {
+                BO.getResult().complete(new OperationResult(TypeOfResult.Aborted, 0, time));
+            }
+            // operations queued behind it might go ahead now
+            wakeUpWaitersOnVariable(BO.getVariableID());
         }
     }
 
 
     /**
-     *  Return transaction start time
+     *  Clear all related wait-for relations when aborting transaction
      */
-    private int getTransactionStartTime(int transactionID) {
-        if (currentTransactions.containsKey(transactionID)) {
-            return currentTransactions.get(transactionID).getStartTime();
-        }
-        return 0;
+    private void clearAllRelatedWaitForList(int abortTransactionID) {
+        this.waitForGraph.removeTransaction(abortTransactionID);
     }
 
 
-    /**Parts with the deadlock checking
-     * 1. given wait-for lists
-     * 2. generate adjacency matrix for directed wait-for graph
-     * 3. while there exists cycle in that directed graph {
-     * 4.   find one cycle
-     * 5.   decide which one on the cycle to abort
-     * 6.   export that one to abortList
-     * 7.   revise the matrix
-     * 8. }
+    /**
+     *  Put back every copy written by the aborted transaction, newest write first, while it still holds the write locks
      */
+    private void rollBackWrites(int abortTransactionID) {
+        Transaction transaction = this.currentTransactions.get(abortTransactionID);
+        if (transaction == null || transaction.getUndoBuffer() == null) {
+            return;
+        }
+        UndoBuffer undoBuffer = transaction.getUndoBuffer();
+        for (int entry = undoBuffer.getEntryCount() - 1; entry >= 0; entry--) {
+            this.sites.get(undoBuffer.getSiteID(entry)).undoWrite(undoBuffer.getVariableID(entry), undoBuffer.getBeforeValue(entry),
+                    undoBuffer.getWasReadable(entry), undoBuffer.getFailureCount(entry));
+        }
+    }
 
-    private List<Integer> deadLockRemoval(List<WaitFor> waitForList) {
-        Set<Integer> set = new HashSet<>();
-        List<Integer> list = new ArrayList<>();
 
-        // find all the transaction IDs included in any wait-for relation list
-        for (WaitFor waitFor : waitForList) {
-            int from  = waitFor.getFrom();
-            int to  = waitFor.getTo();
-            if (!set.contains(from)) {
-                set.add(from);
-                list.add(from);
+    /**
+     *  Row back aborted transactions
+     */
+    private void cancelOffTotal(int abortTransactionID) {
+        Transaction transaction = currentTransactions.get(abortTransactionID);
+        if (transaction == null) {
+            return;
+        }
+        List<Collection<LockOnVariable>> releasedLocks = forSites(transaction.getLockSet().keySet(), tempSite -> {
+            if (!tempSite.getIfSiteWorking()) {
+                return Collections.emptyList();
             }
-            if (!set.contains(to)) {
-                set.add(to);
-                list.add(to);
+            // drop only the locks held by the aborted transaction
+            return tempSite.getLockTableOfSite().releaseAllLocksOfTransaction(abortTransactionID);
+        });
+        for (Collection<LockOnVariable> locks : releasedLocks) {
+            for (LockOnVariable lock : locks) {
+                wakeUpWaitersOnVariable(lock.getVariableID());
             }
         }
+    }
 
-        // sort by transaction ID
-        Collections.sort(list);
 
-        int sizeOfMat = list.size();
-        int sizeOfWaitForList = waitForList.size();
-        printWaitForList();
-        //System.out.println("[Report] Before deadlock checking, the size of this wait-for relation list is " + sizeOfWaitForList + ".");
+    /**
+     *  Run the task on every site and return the results in the order of site ID.
+     *  With site worker threads the sites are done in parallel, otherwise one after another.
+     *  The task should only touch its own site, since the state of this manager is not thread-safe.
+     */
+    private <T> List<T> forEachSite(Function<Site, T> task) {
+        return forSites(this.allSiteIDs, task);
+    }
 
-        // create adjacency matrix for deadlock detection
-        int[][] mat = new int[sizeOfMat][sizeOfMat];
 
-        // create index for all transaction ID starting from number 0
-        Map<Integer, Integer> map = new HashMap<>();
-        for (int i = 0; i < sizeOfMat; i++) {
-            map.put(list.get(i), i);
+    /**
+     *  Run the task on these sites, given in the order of site ID, and return the results in the same order
+     */
+    private <T> List<T> forSites(Collection<Integer> siteIDs, Function<Site, T> task) {
+        List<T> results = new ArrayList<>(siteIDs.size());
+        if (siteExecutor == null || siteIDs.size() == 1) {
+            for (int siteID : siteIDs) {
+                results.add(task.apply(this.sites.get(siteID)));
+            }
+            return results;
         }
-
-        // fill in  1s
-        for (WaitFor WF : waitForList) {
-            int from = WF.getFrom();
-            int to = WF.getTo();
-            mat[map.get(from)][map.get(to)] = 1;
+        List<CompletableFuture<T>> futures = new ArrayList<>(siteIDs.size());
+        for (int siteID : siteIDs) {
+            Site tempSite = this.sites.get(siteID);
+            this.siteEventBuffers.get(siteID).startBuffering();
+            futures.add(CompletableFuture.supplyAsync(() -> task.apply(tempSite), siteExecutor));
         }
-
-        //printMatrix(mat);
-
-        List<Integer> abortTransactionIDList = new ArrayList<>();
-
-        Map<Boolean, Set<Integer>> cycleCheckResult = checkCycle(mat);
-
-        while (cycleCheckResult.containsKey(true)) {
-            System.out.println("A cycle is found!");
-            // gets the set which contains all the vertex index in that loop
-            Set<Integer> tempHashSet = cycleCheckResult.get(true);
-            Set<Integer> translatedSet = translateSet(tempHashSet, list);
-
-            // select the youngest transaction to abort
-            int abortedTransactionID = -1;
-            int maxTime = -1;
-            for (int index : translatedSet) {
-                int tempTime = getWaitForTime (waitForList, index);
-                if (tempTime > maxTime) {
-                    abortedTransactionID = index;
-                }
+        try {
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.join());
+            }
+        } finally {
+            // every worker is done once its future is, the events are passed on only after all of them
+            for (CompletableFuture<T> future : futures) {
+                future.handle((result, failure) -> null).join();
+            }
+            for (int siteID : siteIDs) {
+                this.siteEventBuffers.get(siteID).passOn();
             }
-            //System.out.println("AbortedTransactionID is Index #" + abortedTransactionID + "!" );
-            abortTransactionIDList.add(abortedTransactionID);
-            //System.out.println("Setting both row and column #" + map.get(abortedTransactionID) + " to be zero!" );
-            // deleting all the 1s in the matrix concerned with the aborted transaction
-            reviseTheMat(mat, map.get(abortedTransactionID));
-            //printMatrix(mat);
-            cycleCheckResult = checkCycle(mat);
         }
-        //printMatrix(mat);
-        return abortTransactionIDList;
+        return results;
     }
 
 
     /**
-     *  Print the adjacency matrix for directed graph
+     *  Add transaction ID to aborted transaction list
      */
-    private void printMatrix (int[][] mat) {
-        int size = mat.length;
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                if (j == size - 1) {
-                    System.out.println(mat[i][j]);
-                    continue;
-                }
-                System.out.print(mat[i][j] + " ");
-            }
-        }
+    private void addToAbortedTransaction(int abortTransactionID) {
+        this.abortedTransactions.add(abortTransactionID);
     }
 
 
     /**
-     *  Print all wait for relations
+     *  Remove transaction ID from current transaction list
      */
-    private void printWaitForList() {
-        if (this.waitForList.size() != 0) {
-            System.out.println("\n" + "[Report] Now printing the wait-for relations:");
-            for (WaitFor WF : this.waitForList) {
-                System.out.println("Transaction T" + WF.getFrom() + " is waiting for Transaction T" + WF.getTo() + ".");
-            }
+    private void removeFromCurrentTransaction(int abortTransactionID) {
+        Transaction transaction = this.currentTransactions.remove(abortTransactionID);
+        if (transaction != null && ifReadsFromSnapshot(transaction.getTransactionType())) {
+            activeSnapshotStartTimes.computeIfPresent(transaction.getStartTime(), (startTime, count) -> count == 1 ? null : count - 1);
         }
     }
 
 
     /**
-     *  Check the adjacency matrix, traverse the directed wait-for graph by DFS
-     *  and return one loop(if exists)
+     *  Judge if transactions of this type read from snapshots, read-only ones always do
      */
-    private Map<Boolean, Set<Integer>> checkCycle(int[][] mat) {
-        int size = mat.length;
+    private boolean ifReadsFromSnapshot(TypeOfTransaction typeOfTransaction) {
+        return typeOfTransaction == TypeOfTransaction.Read_Only || isolation != TypeOfIsolation.Locking;
+    }
 
-        // create a list of vertices in the directed graph
-        List<Vertex> V= new ArrayList<>();
-        for (int i = 0; i < size; i++) {
-            V.add(new Vertex());
-        }
 
-        // DFS traverse and find back edge
-        for (int index = 0; index < size; index++) {
-            Vertex tempVertex = V.get(index);
-            // If color is white of this vertex, it means that it is not visited
-            if (tempVertex.getColor() == Color.white) {
-                // create a new hash set for each tree
-                //System.out.println("New HashSet is created!");
-                Set<Integer> tempSet = new HashSet<>();
-                int tempIndex = index;
-                // if the set already contains this index before, then indicates a cycle is found
-                if (tempSet.contains(tempIndex)) {
-                    Map<Boolean, Set<Integer>> retMap  = new HashMap<>();
-                    retMap.put(true, tempSet);
-                    return retMap;
-                }
-                tempSet.add(tempIndex);
-                //System.out.println("Index #" + tempIndex + " is added.");
-                tempVertex.setColor(Color.black); // set vertex state to be visited
-                int[] tempRow = mat[tempIndex]; // check that row do the DFS traverse
-                // return the next vertex index in the vertices list
-                int nextNodeIndex = getNextIndex(tempRow);
-                while (nextNodeIndex >= 0) {
-                    tempIndex = nextNodeIndex;
-                    if (tempSet.contains(tempIndex)) {
-                        Map<Boolean, Set<Integer>> retMap  = new HashMap<>();
-                        retMap.put(true, tempSet);
-                        return retMap;
-                    }
-                    tempSet.add(tempIndex);
-                    //System.out.println("Index #" + tempIndex + " is added.");
-                    tempVertex = V.get(tempIndex);
-                    tempVertex.setColor(Color.black);
-                    tempRow = mat[tempIndex];
-                    nextNodeIndex = getNextIndex(tempRow);
-                }
-            }
+    /**
+     *  Return the start-time of the oldest active transaction reading from snapshots, or the current time if there is none.
+     *  No snapshot that is or will be read starts before it, so older versions can be dropped.
+     */
+    private int getSnapshotHorizon() {
+        if (activeSnapshotStartTimes.isEmpty()) {
+            return time;
         }
-
-        Map<Boolean, Set<Integer>> finalMap  = new HashMap<>();
-        // false indicates that there is no loop found in this directed wait-for graph
-        finalMap.put(false, null);
-        return finalMap;
+        return Math.min(activeSnapshotStartTimes.firstKey(), time);
     }
 
 
     /**
-     *  Check one row of adjacency matrix, and decide what is the next vertex to visit
+     *  Remove all related transaction records in all the sites,
+     *  the history of a site is kept per transaction, so this does not depend on how long the histories are
      */
-    private int getNextIndex(int[] tempRow) {
-        for (int i = 0; i < tempRow.length; i++) {
-            if (tempRow[i] != 0) {
-                return i;
-            }
+    private void removeFromAllRelatedSiteTransaction(int abortTransactionID) {
+        for (int siteID = 1; siteID <= siteTotalNumber; siteID++) {
+            this.SiteTransactionHistory.get(siteID).remove(abortTransactionID);
         }
-        return -1;
     }
 
 
     /**
-     *  Translate the matrix index back to transaction ID
+     *  Return transaction start time
      */
-    private Set<Integer> translateSet(Set<Integer> tempHashSet, List<Integer> list) {
-        Set<Integer> result = new HashSet<>();
-        for (int index : tempHashSet) {
-            int translatedIndex = list.get(index);
-            result.add(translatedIndex);
-            //System.out.println("Translated Index #" + translatedIndex + " is translated!" );
+    private int getTransactionStartTime(int transactionID) {
+        if (currentTransactions.containsKey(transactionID)) {
+            return currentTransactions.get(transactionID).getStartTime();
         }
-        //System.out.println("One translation is done!");
-        return result;
+        return 0;
     }
 
 
     /**
-     *  Get buffered time for this buffered operation
+     *  Parts with the deadlock checking
+     *  The wait-for graph is kept up to date all the time,
+     *  so all the deadlocks are found in one pass over it and one transaction is returned to abort for every cycle
      */
-    private int getWaitForTime(List<WaitFor> waitForList, int translatedIndex) {
-        for (WaitFor waitFor : waitForList) {
-            if (waitFor.getFrom() == translatedIndex) {
-                return waitFor.getTime();
-            }
+    private List<Integer> deadLockRemoval() {
+        printWaitForList();
+        List<Integer> abortTransactionIDList = waitForGraph.findDeadlockVictims();
+        for (int i = 0; i < abortTransactionIDList.size(); i++) {
+            report(EventType.CycleFound, 0, 0, 0, 0, 0);
         }
-        return -1;
+        return abortTransactionIDList;
     }
 
 
     /**
-     *  Get buffered time for this buffered operation
+     *  Print all wait for relations
      */
-    private void reviseTheMat(int[][] mat, int clearID) {
-        int size = mat.length;
-        for (int i = 0; i < size; i++) {
-            mat[i][clearID] = 0;
-            mat[clearID][i] = 0;
+    private void printWaitForList() {
+        if (!this.waitForGraph.isEmpty()) {
+            report(EventType.WaitForHeader, 0, 0, 0, 0, 0);
+            for (WaitFor WF : this.waitForGraph.getWaitForRelations()) {
+                report(EventType.WaitFor, WF.getFrom(), 0, 0, 0, WF.getTo());
+            }
         }
     }
 
@@ -1418,13 +2355,14 @@ public class TransactionManager {
      * print site transaction history per site
      */
     private void printSiteTransactionHistory() {
-        for (int i = 1; i <= DEFAULT_SITE_TOTAL_NUMBER; i++) {
-            List<Operation> list = SiteTransactionHistory.get(i);
+        for (int i = 1; i <= siteTotalNumber; i++) {
             System.out.println("Now printing the operation history of Site " + i + ":");
-            for (Operation o : list) {
-                System.out.println("Transaction T" + o.getTransactionID() + " " + o.getOperationType()
-                        + " on variable x" + o.getVariableID() + " with value " + o.getValue()
-                        + " at time " + o.getTime() + ".");
+            for (List<Operation> operationsOfTransaction : SiteTransactionHistory.get(i).values()) {
+                for (Operation o : operationsOfTransaction) {
+                    System.out.println("Transaction T" + o.getTransactionID() + " " + o.getOperationType()
+                            + " on variable x" + o.getVariableID() + " with value " + o.getValue()
+                            + " at time " + o.getTime() + ".");
+                }
             }
         }
     }
@@ -1434,12 +2372,14 @@ public class TransactionManager {
      * print site transaction history per site
      */
     private void printSiteLockTable() {
-        for (int i = 1; i <= DEFAULT_SITE_TOTAL_NUMBER; i++) {
-            List<LockOnVariable> list = this.sites.get(i).getLockTableOfSite().getLockTable();
+        for (int i = 1; i <= siteTotalNumber; i++) {
+            LockTable table = this.sites.get(i).getLockTableOfSite();
             System.out.println("\n" + "Now printing the lock table of Site " + i + ":");
-            for (LockOnVariable lock : list) {
-                System.out.println("Transaction T" + lock.getTransactionID() + " holds a "
-                        + lock.getLockType() + " lock on Variable x" + lock.getVariableID() + ".");
+            for (int tID : table.getTransactionsHoldingLocks()) {
+                for (LockOnVariable lock : table.getLocksHeldByTransaction(tID)) {
+                    System.out.println("Transaction T" + lock.getTransactionID() + " holds a "
+                            + lock.getLockType() + " lock on Variable x" + lock.getVariableID() + ".");
+                }
             }
         }
     }
@@ -1450,9 +2390,9 @@ public class TransactionManager {
      */
     private void printToBeAbortedList() {
         if (this.toBeAbortedList.size() != 0) {
-            System.out.println("[Report] Now printing the ToBeAbortedList:");
+            report(EventType.ToBeAbortedHeader, 0, 0, 0, 0, 0);
             for (Integer number : toBeAbortedList) {
-                System.out.println("Transaction T" + number + " should be aborted.");
+                report(EventType.ToBeAborted, number, 0, 0, 0, 0);
             }
         }
     }
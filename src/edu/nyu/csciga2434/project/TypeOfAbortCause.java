@@ -0,0 +1,22 @@
+package edu.nyu.csciga2434.project;
+
+/**
+ * Used for indicating why a transaction was aborted
+ */
+
+public enum TypeOfAbortCause {
+    // a site it had accessed failed
+    SiteFailure,
+    // it was chosen as the victim of a cycle in the wait-for graph
+    Deadlock,
+    // it was younger than the transaction it asked to wait for, with wait-die
+    WaitDie,
+    // an older transaction asked to wait for it, with wound-wait
+    WoundWait,
+    // it waited for a lock longer than its lock wait timeout
+    LockWaitTimeout,
+    // a variable it wrote was committed by another transaction after its snapshot was taken
+    SnapshotWriteConflict,
+    // it could be part of a cycle of read-write conflicts, with serializable snapshot isolation
+    SerializationConflict
+}
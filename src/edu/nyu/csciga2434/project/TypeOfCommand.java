@@ -0,0 +1,29 @@
+package edu.nyu.csciga2434.project;
+
+/**
+ * Used for indicating which command of the input grammar a parsed command is, and which of its three numbers are used
+ * Begin - begin(T1), the transaction, and for a lock wait timeout given through the client API the timeout and 1
+ * BeginReadOnly - beginRO(T1), the transaction
+ * Read - R(T1,x2), the transaction and the variable
+ * Write - W(T1,x2,10), the transaction, the variable and the value
+ * End - end(T1), the transaction
+ * Fail - fail(1), the site
+ * Recover - recover(1), the site
+ * Dump - dump(), none
+ * DumpSite - dump(1), the site
+ * DumpVariable - dump(x2), the variable
+ * Unknown - anything else, which is echoed and otherwise ignored, none
+ */
+public enum TypeOfCommand {
+    Begin,
+    BeginReadOnly,
+    Read,
+    Write,
+    End,
+    Fail,
+    Recover,
+    Dump,
+    DumpSite,
+    DumpVariable,
+    Unknown
+}
@@ -0,0 +1,14 @@
+package edu.nyu.csciga2434.project;
+
+/**
+ * Used for indicating how deadlocks are dealt with
+ */
+
+public enum TypeOfDeadlockHandling {
+    // transactions always wait, cycles in the wait-for graph are broken at the end of each tick, as before
+    Detection,
+    // an older transaction waits for a younger one, a younger one asking to wait for an older one is aborted
+    WaitDie,
+    // an older transaction aborts the younger one it would wait for, a younger one waits for an older one
+    WoundWait
+}
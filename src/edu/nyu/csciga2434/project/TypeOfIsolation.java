@@ -0,0 +1,14 @@
+package edu.nyu.csciga2434.project;
+
+/**
+ * Used for indicating how read-write transactions are isolated from each other
+ */
+
+public enum TypeOfIsolation {
+    // reads take read locks and wait behind writers, as before
+    Locking,
+    // reads see the snapshot at the start of the transaction, the first committer of a variable wins
+    Snapshot,
+    // snapshot isolation, and a transaction with read-write conflicts both in and out is aborted
+    SerializableSnapshot
+}
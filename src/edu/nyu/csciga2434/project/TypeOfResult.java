@@ -0,0 +1,17 @@
+package edu.nyu.csciga2434.project;
+
+/**
+ * Used for indicating how an operation submitted through the client API ended
+ * Success - begin, read, write, fail or recover is done
+ * Committed - the transaction is committed
+ * Aborted - the transaction is aborted, or was aborted while this operation was waiting
+ * Waiting - the read-only transaction cannot commit at this time since some site it reads from is down
+ * Failure - the operation is not valid, e.g. no such transaction or site
+ */
+public enum TypeOfResult {
+    Success,
+    Committed,
+    Aborted,
+    Waiting,
+    Failure
+}
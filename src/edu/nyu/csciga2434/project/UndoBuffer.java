@@ -0,0 +1,62 @@
+package edu.nyu.csciga2434.project;
+
+/**
+ * The before-images of the uncommitted writes of one read-write transaction, in the order they were done.
+ * Every entry is the site, the variable, the value of the copy before the write, whether the copy was readable
+ * and the failure count of the site at that time, kept one after another in one int array.
+ * Aborting goes through the entries backwards, so the copies get back the values they had before the first write,
+ * and the cost is the number of writes, not the size of the lock tables.
+ */
+public class UndoBuffer {
+
+    private static final int ENTRY_SIZE = 5;
+
+    private int[] entries;
+    private int size;
+
+    public UndoBuffer() {
+        this.entries = new int[ENTRY_SIZE * 4];
+        this.size = 0;
+    }
+
+
+    /**
+     *  remember how the copy of the variable at this site was before it is written
+     */
+    public void record(int siteID, int variableID, int beforeValue, boolean wasReadable, int failureCount) {
+        if (size + ENTRY_SIZE > entries.length) {
+            int[] larger = new int[entries.length * 2];
+            System.arraycopy(entries, 0, larger, 0, size);
+            entries = larger;
+        }
+        entries[size++] = siteID;
+        entries[size++] = variableID;
+        entries[size++] = beforeValue;
+        entries[size++] = wasReadable ? 1 : 0;
+        entries[size++] = failureCount;
+    }
+
+    public int getEntryCount() {
+        return size / ENTRY_SIZE;
+    }
+
+    public int getSiteID(int entry) {
+        return entries[entry * ENTRY_SIZE];
+    }
+
+    public int getVariableID(int entry) {
+        return entries[entry * ENTRY_SIZE + 1];
+    }
+
+    public int getBeforeValue(int entry) {
+        return entries[entry * ENTRY_SIZE + 2];
+    }
+
+    public boolean getWasReadable(int entry) {
+        return entries[entry * ENTRY_SIZE + 3] == 1;
+    }
+
+    public int getFailureCount(int entry) {
+        return entries[entry * ENTRY_SIZE + 4];
+    }
+}
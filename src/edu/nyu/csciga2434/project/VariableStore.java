@@ -0,0 +1,183 @@
+package edu.nyu.csciga2434.project;
+
+import java.util.*;
+
+/**
+ * Holds all the copies of variables of one site in parallel arrays, one slot per variable.
+ * Each variable xi is initialized to the value 10*i
+ *
+ * For each slot,
+ * there is
+ * a field for the variable ID,
+ * a field for its last committed value,
+ * a field for its latest written(uncommitted) value,
+ * a bit for the available for reading state,
+ * a bit for indicating if it is replicated or non-replicated,
+ * a version chain for the committed value history.
+ *
+ * Variable IDs are mapped to slots by an open addressing hash table of primitive ints,
+ * so reading or writing a variable is O(1) and does not allocate.
+ */
+public class VariableStore {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int EMPTY_KEY = 0; // variable IDs start from 1
+
+    private int size;
+    private int[] variableIDs;
+    private int[] committedValues;
+    private int[] currentValues;
+    private BitSet availableForReading;
+    private BitSet replicated;
+    private VersionChain[] versionChains;
+
+    // open addressing variable ID -> slot table, its length is always a power of two
+    private int[] hashKeys;
+    private int[] hashSlots;
+
+    public VariableStore() {
+        this.size = 0;
+        this.variableIDs = new int[INITIAL_CAPACITY];
+        this.committedValues = new int[INITIAL_CAPACITY];
+        this.currentValues = new int[INITIAL_CAPACITY];
+        this.availableForReading = new BitSet();
+        this.replicated = new BitSet();
+        this.versionChains = new VersionChain[INITIAL_CAPACITY];
+        this.hashKeys = new int[INITIAL_CAPACITY * 2];
+        this.hashSlots = new int[INITIAL_CAPACITY * 2];
+    }
+
+
+    /**
+     *  add a new variable with its initial value and return its slot
+     */
+    public int addVariable(int variableID, boolean ifReplicated) {
+        if (variableID <= EMPTY_KEY) {
+            throw new IllegalArgumentException("Variable ID should be positive.");
+        }
+        if (getSlot(variableID) >= 0) {
+            throw new IllegalArgumentException("Variable x" + variableID + " is already in this store.");
+        }
+        if (size == variableIDs.length) {
+            int newCapacity = size * 2;
+            variableIDs = Arrays.copyOf(variableIDs, newCapacity);
+            committedValues = Arrays.copyOf(committedValues, newCapacity);
+            currentValues = Arrays.copyOf(currentValues, newCapacity);
+            versionChains = Arrays.copyOf(versionChains, newCapacity);
+        }
+        if ((size + 1) * 2 > hashKeys.length) {
+            rehash(hashKeys.length * 2);
+        }
+        int slot = size++;
+        int initialValue = variableID * 10;
+        variableIDs[slot] = variableID;
+        committedValues[slot] = initialValue;
+        currentValues[slot] = initialValue;
+        availableForReading.set(slot);
+        replicated.set(slot, ifReplicated);
+        versionChains[slot] = new VersionChain(initialValue, 0);
+        insertIntoHash(variableID, slot);
+        return slot;
+    }
+
+
+    /**
+     *  return the slot of this variable, -1 if this store does not hold it
+     */
+    public int getSlot(int variableID) {
+        int mask = hashKeys.length - 1;
+        int index = mix(variableID) & mask;
+        while (hashKeys[index] != EMPTY_KEY) {
+            if (hashKeys[index] == variableID) {
+                return hashSlots[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getVariableID(int slot) {
+        return variableIDs[slot];
+    }
+
+    public int getValue(int slot) {
+        return committedValues[slot];
+    }
+
+    public void setValue(int slot, int value) {
+        committedValues[slot] = value;
+    }
+
+    public int getCurrValue(int slot) {
+        return currentValues[slot];
+    }
+
+    public void setCurrValue(int slot, int value) {
+        currentValues[slot] = value;
+    }
+
+    public boolean isAvailableForReading(int slot) {
+        return availableForReading.get(slot);
+    }
+
+    public void setAvailableForReading(int slot, boolean available) {
+        availableForReading.set(slot, available);
+    }
+
+    public VersionChain getVersionChain(int slot) {
+        return versionChains[slot];
+    }
+
+    public void setVersionChain(int slot, VersionChain chain) {
+        versionChains[slot] = chain;
+    }
+
+
+    /**
+     *  only non-replicated variables are available for reading, used when the site recovers
+     */
+    public void setOnlyNonReplicatedAvailableForReading() {
+        availableForReading.set(0, size);
+        availableForReading.andNot(replicated);
+    }
+
+
+    /**
+     *  every current value goes back to the committed one, used when the site fails and loses its uncommitted writes
+     */
+    public void discardUncommittedValues() {
+        System.arraycopy(committedValues, 0, currentValues, 0, size);
+    }
+
+
+    private void insertIntoHash(int variableID, int slot) {
+        int mask = hashKeys.length - 1;
+        int index = mix(variableID) & mask;
+        while (hashKeys[index] != EMPTY_KEY) {
+            index = (index + 1) & mask;
+        }
+        hashKeys[index] = variableID;
+        hashSlots[index] = slot;
+    }
+
+    private void rehash(int newLength) {
+        hashKeys = new int[newLength];
+        hashSlots = new int[newLength];
+        for (int slot = 0; slot < size; slot++) {
+            insertIntoHash(variableIDs[slot], slot);
+        }
+    }
+
+
+    /**
+     *  spread consecutive variable IDs over the table
+     */
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
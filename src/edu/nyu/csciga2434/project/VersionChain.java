@@ -0,0 +1,110 @@
+package edu.nyu.csciga2434.project;
+
+import java.util.Arrays;
+
+/**
+ * The committed value history of one copy of a variable.
+ * Versions are appended in the order of their committed time, which never goes back,
+ * so the value seen by a snapshot is found by binary search on the committed times.
+ * Versions no snapshot can see any more are dropped from the front of the chain.
+ */
+public class VersionChain {
+
+    private static final int INITIAL_CAPACITY = 2;
+
+    private int[] times;
+    private int[] values;
+    private int start;  // index of the oldest version kept
+    private int end;    // index after the latest version
+
+    public VersionChain(int initialValue, int initialTime) {
+        this.times = new int[INITIAL_CAPACITY];
+        this.values = new int[INITIAL_CAPACITY];
+        this.start = 0;
+        this.end = 0;
+        append(initialValue, initialTime);
+    }
+
+
+    /**
+     *  add a newly committed version, its time should be no earlier than the latest one
+     */
+    public void append(int value, int commitTime) {
+        if (end > start && commitTime < times[end - 1]) {
+            throw new IllegalArgumentException("Version committed at time " + commitTime
+                    + " is older than the latest version committed at time " + times[end - 1] + ".");
+        }
+        if (end == times.length) {
+            int size = end - start;
+            if (start > 0 && size < times.length / 2) {
+                // enough room is freed at the front, slide the versions down
+                System.arraycopy(times, start, times, 0, size);
+                System.arraycopy(values, start, values, 0, size);
+            } else {
+                int[] newTimes = new int[times.length * 2];
+                int[] newValues = new int[values.length * 2];
+                System.arraycopy(times, start, newTimes, 0, size);
+                System.arraycopy(values, start, newValues, 0, size);
+                times = newTimes;
+                values = newValues;
+            }
+            start = 0;
+            end = size;
+        }
+        times[end] = commitTime;
+        values[end] = value;
+        end++;
+    }
+
+
+    /**
+     *  return the position of the latest version committed strictly before this time, -1 if there is none
+     */
+    public int findLatestBefore(int time) {
+        // first version committed at or after this time
+        int index = Arrays.binarySearch(times, start, end, time);
+        if (index < 0) {
+            index = -index - 1;
+        } else {
+            while (index > start && times[index - 1] == time) {
+                index--;
+            }
+        }
+        return index - 1 >= start ? index - 1 : -1;
+    }
+
+
+    /**
+     *  drop the versions no snapshot starting at or after the horizon can read.
+     *  The latest version committed before the horizon is kept since such a snapshot still reads it.
+     */
+    public void prune(int horizon) {
+        int keep = findLatestBefore(horizon);
+        if (keep > start) {
+            start = keep;
+        }
+    }
+
+    public int getValue(int position) {
+        return values[position];
+    }
+
+    public int getTime(int position) {
+        return times[position];
+    }
+
+    public int size() {
+        return end - start;
+    }
+
+    /**
+     *  return the position of the oldest version kept, positions run from here up to getLatestPosition()
+     */
+    public int getOldestPosition() {
+        return start;
+    }
+
+    public int getLatestPosition() {
+        return end - 1;
+    }
+}
@@ -0,0 +1,275 @@
+package edu.nyu.csciga2434.project;
+
+import java.util.*;
+
+/**
+ * The directed wait-for graph, kept up to date as operations block and as transactions commit or abort,
+ * instead of being rebuilt as a matrix for every deadlock check.
+ * An edge T1 -> T2 means T1 is waiting for T2. The same edge can be added by several buffered operations,
+ * so it is counted and only goes away when the last of them is removed.
+ *
+ * Deadlocks are found with Tarjan's strongly connected components algorithm:
+ * every component with more than one transaction(or a transaction waiting for itself) contains a cycle.
+ * The youngest transaction of such a component is chosen to abort,
+ * and the rest of the component is checked again since it may still contain another cycle.
+ */
+public class WaitForGraph {
+
+    // from -> (to -> number of buffered operations of from waiting for to), in the order they were added
+    private Map<Integer, Map<Integer, Integer>> outEdges;
+    // to -> transactions waiting for it
+    private Map<Integer, Set<Integer>> inEdges;
+    // transaction ID -> its start time, recorded when it starts waiting
+    private Map<Integer, Integer> startTimes;
+    private int edgeCount;
+    // number of times a relation between two transactions not waiting for each other before was added,
+    //      a new cycle can only be formed by such a relation
+    private long newRelationCount;
+
+    public WaitForGraph() {
+        this.outEdges = new LinkedHashMap<>();
+        this.inEdges = new HashMap<>();
+        this.startTimes = new HashMap<>();
+        this.edgeCount = 0;
+    }
+
+
+    /**
+     *  return true if no transaction is waiting for another one
+     */
+    public boolean isEmpty() {
+        return edgeCount == 0;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    public long getNewRelationCount() {
+        return newRelationCount;
+    }
+
+
+    /**
+     *  add a wait-for relation when an operation is blocked
+     */
+    public void addWaitFor(WaitFor waitFor) {
+        int from = waitFor.getFrom();
+        int to = waitFor.getTo();
+        if (outEdges.computeIfAbsent(from, k -> new LinkedHashMap<>()).merge(to, 1, Integer::sum) == 1) {
+            newRelationCount++;
+        }
+        inEdges.computeIfAbsent(to, k -> new HashSet<>()).add(from);
+        startTimes.put(from, waitFor.getTime());
+        edgeCount++;
+    }
+
+
+    /**
+     *  remove one wait-for relation when the blocked operation is retried
+     */
+    public void removeWaitFor(int from, int to) {
+        Map<Integer, Integer> targets = outEdges.get(from);
+        if (targets == null || !targets.containsKey(to)) {
+            return;
+        }
+        int count = targets.get(to);
+        edgeCount--;
+        if (count > 1) {
+            targets.put(to, count - 1);
+            return;
+        }
+        targets.remove(to);
+        if (targets.isEmpty()) {
+            outEdges.remove(from);
+        }
+        Set<Integer> sources = inEdges.get(to);
+        sources.remove(from);
+        if (sources.isEmpty()) {
+            inEdges.remove(to);
+        }
+    }
+
+
+    /**
+     *  remove all the wait-for relations from or to this transaction when it commits or aborts
+     */
+    public void removeTransaction(int transactionID) {
+        Map<Integer, Integer> targets = outEdges.remove(transactionID);
+        if (targets != null) {
+            for (Map.Entry<Integer, Integer> entry : targets.entrySet()) {
+                edgeCount -= entry.getValue();
+                Set<Integer> sources = inEdges.get(entry.getKey());
+                sources.remove(transactionID);
+                if (sources.isEmpty()) {
+                    inEdges.remove(entry.getKey());
+                }
+            }
+        }
+        Set<Integer> sources = inEdges.remove(transactionID);
+        if (sources != null) {
+            for (int from : sources) {
+                Map<Integer, Integer> targetsOfSource = outEdges.get(from);
+                edgeCount -= targetsOfSource.remove(transactionID);
+                if (targetsOfSource.isEmpty()) {
+                    outEdges.remove(from);
+                }
+            }
+        }
+        startTimes.remove(transactionID);
+    }
+
+
+    /**
+     *  return all wait-for relations in the order they were added, one per blocked operation
+     */
+    public List<WaitFor> getWaitForRelations() {
+        List<WaitFor> result = new ArrayList<>();
+        for (Map.Entry<Integer, Map<Integer, Integer>> from : outEdges.entrySet()) {
+            for (Map.Entry<Integer, Integer> to : from.getValue().entrySet()) {
+                for (int i = 0; i < to.getValue(); i++) {
+                    result.add(new WaitFor(from.getKey(), to.getKey(), startTimes.get(from.getKey())));
+                }
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     *  Find the transactions to abort so that no cycle is left, the graph itself is not changed.
+     *  Each round is one O(V+E) pass over the part of the graph that still has cycles.
+     */
+    public List<Integer> findDeadlockVictims() {
+        List<Integer> victims = new ArrayList<>();
+        Set<Integer> removed = new HashSet<>();
+
+        // visit transactions in the order of their IDs so that the result does not depend on hashing
+        Set<Integer> allVertices = new TreeSet<>(outEdges.keySet());
+        allVertices.addAll(inEdges.keySet());
+
+        Deque<Collection<Integer>> pending = new ArrayDeque<>();
+        pending.push(allVertices);
+        while (!pending.isEmpty()) {
+            Collection<Integer> vertices = pending.pop();
+            for (List<Integer> component : stronglyConnectedComponents(vertices, removed)) {
+                if (component.size() == 1 && !hasSelfLoop(component.get(0))) {
+                    continue;
+                }
+                int victim = findYoungest(component);
+                victims.add(victim);
+                removed.add(victim);
+                List<Integer> rest = new ArrayList<>(component);
+                rest.remove(Integer.valueOf(victim));
+                if (!rest.isEmpty()) {
+                    pending.push(rest);
+                }
+            }
+        }
+        return victims;
+    }
+
+
+    /**
+     *  Tarjan's algorithm on the subgraph made of these vertices minus the removed ones, without recursion
+     */
+    private List<List<Integer>> stronglyConnectedComponents(Collection<Integer> vertices, Set<Integer> removed) {
+        Set<Integer> inSubgraph = new HashSet<>(vertices);
+        inSubgraph.removeAll(removed);
+
+        Map<Integer, Integer> index = new HashMap<>();
+        Map<Integer, Integer> lowLink = new HashMap<>();
+        Deque<Integer> stack = new ArrayDeque<>();
+        Set<Integer> onStack = new HashSet<>();
+        List<List<Integer>> components = new ArrayList<>();
+        int nextIndex = 0;
+
+        // call stack of the depth-first search, each frame is a vertex and the iterator over its successors
+        Deque<Integer> callVertices = new ArrayDeque<>();
+        Deque<Iterator<Integer>> callIterators = new ArrayDeque<>();
+
+        for (int root : vertices) {
+            if (!inSubgraph.contains(root) || index.containsKey(root)) {
+                continue;
+            }
+            index.put(root, nextIndex);
+            lowLink.put(root, nextIndex);
+            nextIndex++;
+            stack.push(root);
+            onStack.add(root);
+            callVertices.push(root);
+            callIterators.push(successors(root));
+
+            while (!callVertices.isEmpty()) {
+                int v = callVertices.peek();
+                Iterator<Integer> it = callIterators.peek();
+                if (it.hasNext()) {
+                    int w = it.next();
+                    if (!inSubgraph.contains(w)) {
+                        continue;
+                    }
+                    if (!index.containsKey(w)) {
+                        index.put(w, nextIndex);
+                        lowLink.put(w, nextIndex);
+                        nextIndex++;
+                        stack.push(w);
+                        onStack.add(w);
+                        callVertices.push(w);
+                        callIterators.push(successors(w));
+                    } else if (onStack.contains(w)) {
+                        lowLink.put(v, Math.min(lowLink.get(v), index.get(w)));
+                    }
+                    continue;
+                }
+
+                // all successors of v are done
+                callVertices.pop();
+                callIterators.pop();
+                if (!callVertices.isEmpty()) {
+                    int parent = callVertices.peek();
+                    lowLink.put(parent, Math.min(lowLink.get(parent), lowLink.get(v)));
+                }
+                if (lowLink.get(v).equals(index.get(v))) {
+                    List<Integer> component = new ArrayList<>();
+                    int w;
+                    do {
+                        w = stack.pop();
+                        onStack.remove(w);
+                        component.add(w);
+                    } while (w != v);
+                    components.add(component);
+                }
+            }
+        }
+        return components;
+    }
+
+    private Iterator<Integer> successors(int vertex) {
+        Map<Integer, Integer> targets = outEdges.get(vertex);
+        if (targets == null) {
+            return Collections.emptyIterator();
+        }
+        return targets.keySet().iterator();
+    }
+
+    private boolean hasSelfLoop(int vertex) {
+        Map<Integer, Integer> targets = outEdges.get(vertex);
+        return targets != null && targets.containsKey(vertex);
+    }
+
+
+    /**
+     *  the youngest transaction is the one started latest, the larger ID wins if they started at the same time
+     */
+    private int findYoungest(List<Integer> component) {
+        int youngest = component.get(0);
+        for (int transactionID : component) {
+            int time = startTimes.getOrDefault(transactionID, Integer.MIN_VALUE);
+            int youngestTime = startTimes.getOrDefault(youngest, Integer.MIN_VALUE);
+            if (time > youngestTime || (time == youngestTime && transactionID > youngest)) {
+                youngest = transactionID;
+            }
+        }
+        return youngest;
+    }
+}
@@ -0,0 +1,115 @@
+package edu.nyu.csciga2434.project;
+
+/**
+ * The shape of a generated workload.
+ * Inside the configuration,
+ * there is
+ * a field for the number of sites and the number of variables the script is written for,
+ * a field for the number of transactions in the whole script,
+ * a field for the number of transactions active at once, each of them gives one command per line,
+ * a field for the fraction of transactions which are read-only,
+ * a field for the mean number of reads and writes of a transaction, the actual number is drawn evenly from 1 to twice that minus 1,
+ * a field for the fraction of the operations of a read-write transaction which are writes,
+ * a field for the zipfian skew of the variables used, 0 meaning every variable is used equally often,
+ * a field for the chance in every line that an up site fails and the chance that a failed site recovers,
+ * a field for the seed, the same configuration always gives the same script.
+ */
+public class WorkloadConfiguration {
+
+    private final int siteTotalNumber;
+    private final int variableTotalNumber;
+    private final long transactionCount;
+    private final int overlap;
+    private final double readOnlyFraction;
+    private final int operationsPerTransaction;
+    private final double writeFraction;
+    private final double skew;
+    private final double failureProbability;
+    private final double recoveryProbability;
+    private final long seed;
+
+    public WorkloadConfiguration(int siteTotalNumber, int variableTotalNumber, long transactionCount, int overlap,
+                                 double readOnlyFraction, int operationsPerTransaction, double writeFraction, double skew,
+                                 double failureProbability, double recoveryProbability, long seed) {
+        if (siteTotalNumber < 1 || variableTotalNumber < 1) {
+            throw new IllegalArgumentException("There should be at least one site and one variable.");
+        }
+        if (transactionCount < 0) {
+            throw new IllegalArgumentException("The number of transactions should not be negative.");
+        }
+        if (overlap < 1) {
+            throw new IllegalArgumentException("At least one transaction should be active at once.");
+        }
+        if (operationsPerTransaction < 1) {
+            throw new IllegalArgumentException("A transaction should have at least one operation.");
+        }
+        checkFraction("read-only fraction", readOnlyFraction);
+        checkFraction("write fraction", writeFraction);
+        checkFraction("failure probability", failureProbability);
+        checkFraction("recovery probability", recoveryProbability);
+        if (skew < 0 || skew >= 1) {
+            throw new IllegalArgumentException("The skew " + skew + " should be at least 0 and less than 1.");
+        }
+        this.siteTotalNumber = siteTotalNumber;
+        this.variableTotalNumber = variableTotalNumber;
+        this.transactionCount = transactionCount;
+        this.overlap = overlap;
+        this.readOnlyFraction = readOnlyFraction;
+        this.operationsPerTransaction = operationsPerTransaction;
+        this.writeFraction = writeFraction;
+        this.skew = skew;
+        this.failureProbability = failureProbability;
+        this.recoveryProbability = recoveryProbability;
+        this.seed = seed;
+    }
+
+    private static void checkFraction(String name, double value) {
+        if (value < 0 || value > 1) {
+            throw new IllegalArgumentException("The " + name + " " + value + " should be between 0 and 1.");
+        }
+    }
+
+    public int getSiteTotalNumber() {
+        return siteTotalNumber;
+    }
+
+    public int getVariableTotalNumber() {
+        return variableTotalNumber;
+    }
+
+    public long getTransactionCount() {
+        return transactionCount;
+    }
+
+    public int getOverlap() {
+        return overlap;
+    }
+
+    public double getReadOnlyFraction() {
+        return readOnlyFraction;
+    }
+
+    public int getOperationsPerTransaction() {
+        return operationsPerTransaction;
+    }
+
+    public double getWriteFraction() {
+        return writeFraction;
+    }
+
+    public double getSkew() {
+        return skew;
+    }
+
+    public double getFailureProbability() {
+        return failureProbability;
+    }
+
+    public double getRecoveryProbability() {
+        return recoveryProbability;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+}
@@ -0,0 +1,167 @@
+package edu.nyu.csciga2434.project;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Writes a script of commands for readCommand, shaped by a WorkloadConfiguration.
+ * Every line is one tick holding one command of every active transaction, separated by ";":
+ * its begin, one of its reads or writes, or its end, so a line later its slot is taken by the next transaction.
+ * Site failures and recoveries are put at the front of a line, and at least one site is always kept up.
+ * The script is written out line by line while it is generated,
+ * so only the active transactions are kept in memory however long the script is.
+ */
+public class WorkloadGenerator {
+
+    private final WorkloadConfiguration configuration;
+
+    public WorkloadGenerator(WorkloadConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
+
+    /**
+     *  write the whole script and return the number of lines written
+     */
+    public long generate(Appendable out) throws IOException {
+        int overlap = configuration.getOverlap();
+        int siteTotalNumber = configuration.getSiteTotalNumber();
+        Random random = new Random(configuration.getSeed());
+        ZipfianGenerator variables = new ZipfianGenerator(configuration.getVariableTotalNumber(), configuration.getSkew(),
+                random.nextLong());
+        // the hottest variables are spread over the variable IDs instead of being x1, x2, ...
+        int[] variableOfRank = shuffledIDs(configuration.getVariableTotalNumber(), random);
+
+        // per slot: the transaction in it(0 if none), whether it is read-only and how many operations it has left
+        long[] transactionOfSlot = new long[overlap];
+        boolean[] readOnlyOfSlot = new boolean[overlap];
+        int[] operationsLeftOfSlot = new int[overlap];
+        boolean[] siteDown = new boolean[siteTotalNumber + 1];
+        int upSiteNumber = siteTotalNumber;
+
+        long nextTransactionID = 1;
+        long finishedTransactionNumber = 0;
+        long lineNumber = 0;
+        StringBuilder line = new StringBuilder();
+        while (finishedTransactionNumber < configuration.getTransactionCount()) {
+            line.setLength(0);
+            lineNumber++;
+
+            for (int siteID = 1; siteID <= siteTotalNumber; siteID++) {
+                if (siteDown[siteID] && random.nextDouble() < configuration.getRecoveryProbability()) {
+                    siteDown[siteID] = false;
+                    upSiteNumber++;
+                    appendCommand(line).append("recover(").append(siteID).append(')');
+                }
+            }
+            if (upSiteNumber > 1 && random.nextDouble() < configuration.getFailureProbability()) {
+                int siteID = pickUpSite(siteDown, upSiteNumber, random);
+                siteDown[siteID] = true;
+                upSiteNumber--;
+                appendCommand(line).append("fail(").append(siteID).append(')');
+            }
+
+            for (int slot = 0; slot < overlap; slot++) {
+                if (transactionOfSlot[slot] == 0) {
+                    if (nextTransactionID > configuration.getTransactionCount()) {
+                        continue;
+                    }
+                    transactionOfSlot[slot] = nextTransactionID++;
+                    readOnlyOfSlot[slot] = random.nextDouble() < configuration.getReadOnlyFraction();
+                    operationsLeftOfSlot[slot] = 1 + random.nextInt(2 * configuration.getOperationsPerTransaction() - 1);
+                    appendCommand(line).append(readOnlyOfSlot[slot] ? "beginRO(T" : "begin(T").append(transactionOfSlot[slot]).append(')');
+                } else if (operationsLeftOfSlot[slot] == 0) {
+                    appendCommand(line).append("end(T").append(transactionOfSlot[slot]).append(')');
+                    transactionOfSlot[slot] = 0;
+                    finishedTransactionNumber++;
+                } else {
+                    int variableID = variableOfRank[variables.next() - 1];
+                    if (!readOnlyOfSlot[slot] && random.nextDouble() < configuration.getWriteFraction()) {
+                        appendCommand(line).append("W(T").append(transactionOfSlot[slot]).append(",x").append(variableID)
+                                .append(',').append(random.nextInt(1000)).append(')');
+                    } else {
+                        appendCommand(line).append("R(T").append(transactionOfSlot[slot]).append(",x").append(variableID).append(')');
+                    }
+                    operationsLeftOfSlot[slot]--;
+                }
+            }
+            line.append('\n');
+            out.append(line);
+        }
+        return lineNumber;
+    }
+
+    private static StringBuilder appendCommand(StringBuilder line) {
+        if (line.length() > 0) {
+            line.append("; ");
+        }
+        return line;
+    }
+
+    private static int pickUpSite(boolean[] siteDown, int upSiteNumber, Random random) {
+        int skip = random.nextInt(upSiteNumber);
+        for (int siteID = 1; siteID < siteDown.length; siteID++) {
+            if (!siteDown[siteID] && skip-- == 0) {
+                return siteID;
+            }
+        }
+        throw new IllegalStateException("No site is up.");
+    }
+
+    private static int[] shuffledIDs(int count, Random random) {
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = i + 1;
+        }
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int temp = ids[i];
+            ids[i] = ids[j];
+            ids[j] = temp;
+        }
+        return ids;
+    }
+
+
+    /**
+     *  args[0] is the output file, - for the standard output, args[1] is the number of transactions.
+     *  Optionally followed by the number of transactions active at once, the read-only fraction,
+     *  the mean number of operations of a transaction, the write fraction, the zipfian skew,
+     *  the chance of a failure and of a recovery in every line, the number of sites, the number of variables and the seed,
+     *  e.g. trace.txt 1000000 32 0.2 4 0.5 0.99 0.001 0.05 10 20 42
+     */
+    public static void main(String[] args) throws IOException {
+        long transactionCount = Long.parseLong(args[1]);
+        int overlap = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        double readOnlyFraction = args.length > 3 ? Double.parseDouble(args[3]) : 0.2;
+        int operationsPerTransaction = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+        double writeFraction = args.length > 5 ? Double.parseDouble(args[5]) : 0.5;
+        double skew = args.length > 6 ? Double.parseDouble(args[6]) : 0;
+        double failureProbability = args.length > 7 ? Double.parseDouble(args[7]) : 0;
+        double recoveryProbability = args.length > 8 ? Double.parseDouble(args[8]) : 0.1;
+        int siteTotalNumber = args.length > 9 ? Integer.parseInt(args[9]) : 10;
+        int variableTotalNumber = args.length > 10 ? Integer.parseInt(args[10]) : siteTotalNumber * 2;
+        long seed = args.length > 11 ? Long.parseLong(args[11]) : 42;
+        WorkloadGenerator generator = new WorkloadGenerator(new WorkloadConfiguration(siteTotalNumber, variableTotalNumber,
+                transactionCount, overlap, readOnlyFraction, operationsPerTransaction, writeFraction, skew,
+                failureProbability, recoveryProbability, seed));
+
+        boolean toStandardOutput = args[0].equals("-");
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+                toStandardOutput ? System.out : new FileOutputStream(args[0]), StandardCharsets.UTF_8), 1 << 16);
+        try {
+            generator.generate(writer);
+        } finally {
+            if (toStandardOutput) {
+                writer.flush();
+            } else {
+                writer.close();
+            }
+        }
+    }
+}
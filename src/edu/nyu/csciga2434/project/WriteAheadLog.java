@@ -0,0 +1,175 @@
+package edu.nyu.csciga2434.project;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * The append-only log of the committed writes of one site.
+ * Every record is 16 bytes: variable ID, committed value, commit time and the CRC32 of these 12 bytes.
+ * The failure and the recovery of the site are recorded too, as SITE_FAILED or SITE_RECOVERED in place of the variable ID
+ * with the time they happened, so the site is started again as it was, not up with every copy readable.
+ * Appending only copies the record into a buffer in memory,
+ * sync writes everything appended since the last sync and forces it to disk once,
+ * so all the commits of one tick share one fsync(group commit).
+ * A record which is cut short or whose checksum does not match was not synced completely,
+ * so reading the log stops there and drops it together with everything after it.
+ */
+public class WriteAheadLog {
+
+    public static final int RECORD_SIZE = 16;
+    // in place of the variable ID, variable IDs are positive
+    public static final int SITE_FAILED = -1;
+    public static final int SITE_RECOVERED = -2;
+    private static final int PAYLOAD_SIZE = 12;
+
+    private final File file;
+    private final FileChannel channel;
+    private ByteBuffer pending;
+    private final CRC32 crc;
+
+    public WriteAheadLog(File file) {
+        this.file = file;
+        try {
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.channel.position(this.channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open the log " + file + ".", e);
+        }
+        this.pending = ByteBuffer.allocate(RECORD_SIZE * 64);
+        this.crc = new CRC32();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+
+    /**
+     *  append the committed write of one variable, it is durable after the next sync
+     */
+    public synchronized void append(int variableID, int value, int commitTime) {
+        if (pending.remaining() < RECORD_SIZE) {
+            ByteBuffer larger = ByteBuffer.allocate(pending.capacity() * 2);
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+        int start = pending.position();
+        pending.putInt(variableID).putInt(value).putInt(commitTime);
+        pending.putInt(checksum(pending.array(), start));
+    }
+
+
+    /**
+     *  append the failure or the recovery of the site at this time, it is durable after the next sync
+     */
+    public void appendSiteState(int siteState, int time) {
+        append(siteState, 0, time);
+    }
+
+
+    /**
+     *  write out every record appended since the last sync and force them to disk
+     */
+    public synchronized void sync() {
+        if (pending.position() == 0) {
+            return;
+        }
+        pending.flip();
+        try {
+            while (pending.hasRemaining()) {
+                channel.write(pending);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write the log " + file + ".", e);
+        } finally {
+            pending.clear();
+        }
+    }
+
+
+    /**
+     *  Read every complete record of the log in the order they were written,
+     *  as variable ID(or SITE_FAILED or SITE_RECOVERED), value and commit time one after another.
+     *  A torn tail is cut off so that new records follow the last complete one.
+     */
+    public synchronized int[] readAll() {
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalStateException("The log " + file + " is too large to be read at once.");
+            }
+            ByteBuffer content = ByteBuffer.allocate((int) size);
+            channel.position(0);
+            while (content.hasRemaining() && channel.read(content) >= 0) {
+                // keep reading until the whole file is in
+            }
+            content.flip();
+
+            int[] records = new int[(int) (size / RECORD_SIZE) * 3];
+            int count = 0;
+            while (content.remaining() >= RECORD_SIZE) {
+                int start = content.position();
+                int variableID = content.getInt();
+                int value = content.getInt();
+                int commitTime = content.getInt();
+                if (content.getInt() != checksum(content.array(), start)) {
+                    content.position(start);
+                    break;
+                }
+                records[count++] = variableID;
+                records[count++] = value;
+                records[count++] = commitTime;
+            }
+            long validEnd = content.position();
+            if (validEnd < size) {
+                channel.truncate(validEnd);
+            }
+            channel.position(validEnd);
+            return Arrays.copyOf(records, count);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read the log " + file + ".", e);
+        }
+    }
+
+
+    /**
+     *  drop every record, called once a checkpoint holds all of them
+     */
+    public synchronized void truncate() {
+        pending.clear();
+        try {
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot truncate the log " + file + ".", e);
+        }
+    }
+
+
+    /**
+     *  sync and close the file
+     */
+    public synchronized void close() {
+        sync();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot close the log " + file + ".", e);
+        }
+    }
+
+    private int checksum(byte[] bytes, int start) {
+        crc.reset();
+        crc.update(bytes, start, PAYLOAD_SIZE);
+        return (int) crc.getValue();
+    }
+}
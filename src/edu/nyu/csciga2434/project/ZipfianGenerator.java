@@ -0,0 +1,70 @@
+package edu.nyu.csciga2434.project;
+
+import java.util.Random;
+
+/**
+ * Draws items 1..n where item k is drawn with probability proportional to 1 / k^theta,
+ * so item 1 is the hottest one. A theta of 0 draws every item equally often.
+ * Each draw takes constant time(Gray et al., Quickly Generating Billion-Record Synthetic Databases),
+ * only the constants are computed in O(n) once.
+ */
+public class ZipfianGenerator {
+
+    private final int itemCount;
+    private final double theta;
+    private final double alpha;
+    private final double zetaN;
+    private final double eta;
+    private final Random random;
+
+    public ZipfianGenerator(int itemCount, double theta, long seed) {
+        if (itemCount < 1) {
+            throw new IllegalArgumentException("There should be at least one item.");
+        }
+        if (theta < 0 || theta >= 1) {
+            throw new IllegalArgumentException("The skew " + theta + " should be at least 0 and less than 1.");
+        }
+        this.itemCount = itemCount;
+        this.theta = theta;
+        this.random = new Random(seed);
+        this.zetaN = zeta(itemCount, theta);
+        this.alpha = 1.0 / (1.0 - theta);
+        this.eta = (1 - Math.pow(2.0 / itemCount, 1 - theta)) / (1 - zeta(2, theta) / zetaN);
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public double getTheta() {
+        return theta;
+    }
+
+
+    /**
+     *  return the next item, between 1 and the number of items
+     */
+    public int next() {
+        if (theta == 0) {
+            return 1 + random.nextInt(itemCount);
+        }
+        double u = random.nextDouble();
+        double uz = u * zetaN;
+        if (uz < 1.0) {
+            return 1;
+        }
+        if (uz < 1.0 + Math.pow(0.5, theta)) {
+            return Math.min(2, itemCount);
+        }
+        int item = 1 + (int) (itemCount * Math.pow(eta * u - eta + 1, alpha));
+        return Math.min(item, itemCount);
+    }
+
+    private static double zeta(int n, double theta) {
+        double sum = 0;
+        for (int i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+}